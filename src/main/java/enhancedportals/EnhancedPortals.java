@@ -6,6 +6,7 @@ import java.lang.reflect.Method;
 import net.minecraft.creativetab.CreativeTabs;
 import net.minecraft.util.EnumChatFormatting;
 import net.minecraft.util.StatCollector;
+import net.minecraftforge.common.ForgeChunkManager;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.world.WorldEvent;
 
@@ -24,6 +25,7 @@ import cpw.mods.fml.common.event.FMLInitializationEvent;
 import cpw.mods.fml.common.event.FMLPostInitializationEvent;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
 import cpw.mods.fml.common.event.FMLServerStartingEvent;
+import cpw.mods.fml.common.event.FMLServerStoppedEvent;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
 import cpw.mods.fml.common.network.NetworkRegistry;
 import enhancedportals.block.BlockFrame;
@@ -31,7 +33,12 @@ import enhancedportals.common.CreativeTabEP3;
 import enhancedportals.network.CommonProxy;
 import enhancedportals.network.GuiHandler;
 import enhancedportals.network.PacketPipeline;
+import enhancedportals.portal.ConnectionChunkLoader;
 import enhancedportals.portal.NetworkManager;
+import enhancedportals.portal.PortalBlockIndex;
+import enhancedportals.portal.PortalCooldowns;
+import enhancedportals.portal.StabilizerScheduler;
+import enhancedportals.portal.TeleportQueue;
 
 @Mod(name = EnhancedPortals.NAME, modid = EnhancedPortals.ID, version = "3.0.0", dependencies = EnhancedPortals.DEPENDENCIES)
 public class EnhancedPortals
@@ -77,6 +84,11 @@ public class EnhancedPortals
     {
         proxy.miscSetup();
         NetworkRegistry.INSTANCE.registerGuiHandler(this, new GuiHandler());
+        ForgeChunkManager.setForcedChunkLoadingCallback(this, new ConnectionChunkLoader());
+        FMLCommonHandler.instance().bus().register(new TeleportQueue());
+        FMLCommonHandler.instance().bus().register(new PortalCooldowns());
+        FMLCommonHandler.instance().bus().register(new StabilizerScheduler());
+        FMLCommonHandler.instance().bus().register(new PortalBlockIndex());
     }
 
     /** Taken from the CC-API, allowing for use it if it's available, instead of shipping it/requiring it **/
@@ -124,12 +136,38 @@ public class EnhancedPortals
         proxy.networkManager = new NetworkManager(event);
     }
 
+    @EventHandler
+    public void serverStopped(FMLServerStoppedEvent event)
+    {
+        if (proxy.networkManager != null)
+        {
+            proxy.networkManager.shutdown();
+            proxy.networkManager = null;
+        }
+
+        ConnectionChunkLoader.clear();
+        TeleportQueue.clear();
+        PortalCooldowns.clear();
+        StabilizerScheduler.clear();
+        PortalBlockIndex.clear();
+    }
+
     @SubscribeEvent
     public void worldSave(WorldEvent.Save event)
     {
-        if (!event.world.isRemote)
+        if (!event.world.isRemote && proxy.networkManager != null)
         {
             proxy.networkManager.saveAllData();
         }
     }
+
+    @SubscribeEvent
+    public void worldUnload(WorldEvent.Unload event)
+    {
+        PortalBlockIndex.unload(event.world);
+        ConnectionChunkLoader.unload(event.world);
+        StabilizerScheduler.unload(event.world);
+        PortalCooldowns.unload(event.world);
+        TeleportQueue.unload(event.world);
+    }
 }
@@ -28,6 +28,7 @@ import dan200.computercraft.api.peripheral.IPeripheralProvider;
 import enhancedportals.EnhancedPortals;
 import enhancedportals.common.ISidedBlockTexture;
 import enhancedportals.network.ClientProxy;
+import enhancedportals.portal.PortalUtils;
 import enhancedportals.tileentity.TileController;
 import enhancedportals.tileentity.TileDiallingDevice;
 import enhancedportals.tileentity.TileFrame;
@@ -69,6 +70,7 @@ public class BlockFrame extends BlockContainer implements IDismantleable, IPerip
     public void breakBlock(World world, int x, int y, int z, Block block, int unknown)
     {
         TileEntity t = world.getTileEntity(x, y, z);
+        PortalUtils.onFrameChanged(world);
 
         if (t != null && t instanceof TileFrame)
         {
@@ -313,6 +315,7 @@ public class BlockFrame extends BlockContainer implements IDismantleable, IPerip
     public void onBlockPlacedBy(World world, int x, int y, int z, EntityLivingBase entity, ItemStack stack)
     {
         TileEntity tile = world.getTileEntity(x, y, z);
+        PortalUtils.onFrameChanged(world);
 
         if (tile instanceof TilePortalPart)
         {
@@ -324,6 +327,7 @@ public class BlockFrame extends BlockContainer implements IDismantleable, IPerip
     public void onNeighborBlockChange(World world, int x, int y, int z, Block b)
     {
         TileEntity tile = world.getTileEntity(x, y, z);
+        PortalUtils.onFrameChanged(world);
 
         if (tile instanceof TileRedstoneInterface)
         {
@@ -3,13 +3,13 @@ package enhancedportals.block;
 import java.util.Random;
 
 import net.minecraft.block.Block;
-import net.minecraft.block.BlockContainer;
 import net.minecraft.block.material.Material;
 import net.minecraft.client.renderer.texture.IIconRegister;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.Item;
-import net.minecraft.tileentity.TileEntity;
+import net.minecraft.item.ItemBlock;
+import net.minecraft.item.ItemStack;
 import net.minecraft.util.AxisAlignedBB;
 import net.minecraft.util.IIcon;
 import net.minecraft.world.IBlockAccess;
@@ -20,15 +20,20 @@ import cpw.mods.fml.relauncher.SideOnly;
 import enhancedportals.EnhancedPortals;
 import enhancedportals.client.PortalParticleFX;
 import enhancedportals.client.PortalRenderer;
+import enhancedportals.item.ItemNanobrush;
 import enhancedportals.item.ItemPortalModule;
 import enhancedportals.network.ClientProxy;
 import enhancedportals.network.CommonProxy;
+import enhancedportals.network.GuiHandler;
 import enhancedportals.portal.EntityManager;
+import enhancedportals.portal.PortalBlockIndex;
+import enhancedportals.portal.PortalCooldowns;
+import enhancedportals.portal.TeleportQueue;
 import enhancedportals.tileentity.TileController;
 import enhancedportals.tileentity.TileModuleManipulator;
-import enhancedportals.tileentity.TilePortal;
+import enhancedportals.utility.GeneralUtils;
 
-public class BlockPortal extends BlockContainer
+public class BlockPortal extends Block
 {
     public static BlockPortal instance;
     IIcon texture;
@@ -47,11 +52,11 @@ public class BlockPortal extends BlockContainer
     @Override
     public void breakBlock(World world, int x, int y, int z, Block b, int newID)
     {
-        TileEntity tile = world.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
 
-        if (tile instanceof TilePortal)
+        if (controller != null)
         {
-            ((TilePortal) tile).breakBlock(b, newID);
+            controller.connectionTerminate();
         }
 
         super.breakBlock(world, x, y, z, b, newID);
@@ -60,22 +65,16 @@ public class BlockPortal extends BlockContainer
     @Override
     public int colorMultiplier(IBlockAccess blockAccess, int x, int y, int z)
     {
-        TileEntity tile = blockAccess.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(blockAccess, x, y, z);
 
-        if (tile instanceof TilePortal)
+        if (controller != null)
         {
-            return ((TilePortal) tile).getColour();
+            return controller.activeTextureData.getPortalColour();
         }
 
         return 0xFFFFFF;
     }
 
-    @Override
-    public TileEntity createNewTileEntity(World var1, int var2)
-    {
-        return new TilePortal();
-    }
-
     @Override
     public AxisAlignedBB getCollisionBoundingBoxFromPool(World par1World, int par2, int par3, int par4)
     {
@@ -85,14 +84,21 @@ public class BlockPortal extends BlockContainer
     @Override
     public IIcon getIcon(IBlockAccess blockAccess, int x, int y, int z, int side)
     {
-        TileEntity tile = blockAccess.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(blockAccess, x, y, z);
 
-        if (tile instanceof TilePortal)
+        if (controller != null)
         {
-            return ((TilePortal) tile).getBlockTexture(side);
+            if (controller.activeTextureData.hasCustomPortalTexture() && ClientProxy.customPortalTextures.size() > controller.activeTextureData.getCustomPortalTexture() && ClientProxy.customPortalTextures.get(controller.activeTextureData.getCustomPortalTexture()) != null)
+            {
+                return ClientProxy.customPortalTextures.get(controller.activeTextureData.getCustomPortalTexture());
+            }
+            else if (controller.activeTextureData.getPortalItem() != null && controller.activeTextureData.getPortalItem().getItem() instanceof ItemBlock)
+            {
+                return Block.getBlockFromItem(controller.activeTextureData.getPortalItem().getItem()).getIcon(side, controller.activeTextureData.getPortalItem().getItemDamage());
+            }
         }
 
-        return null;
+        return getIcon(side, 0);
     }
 
     @Override
@@ -134,11 +140,21 @@ public class BlockPortal extends BlockContainer
     @Override
     public boolean onBlockActivated(World world, int x, int y, int z, EntityPlayer player, int par6, float par7, float par8, float par9)
     {
-        TileEntity tile = world.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
+        ItemStack stack = player.inventory.getCurrentItem();
 
-        if (tile instanceof TilePortal)
+        if (stack != null && controller != null && controller.isFinalized())
         {
-            return ((TilePortal) tile).activate(player, player.inventory.getCurrentItem());
+            if (GeneralUtils.isWrench(stack))
+            {
+                GuiHandler.openGui(player, controller, GuiHandler.PORTAL_CONTROLLER_A);
+                return true;
+            }
+            else if (stack.getItem() == ItemNanobrush.instance)
+            {
+                GuiHandler.openGui(player, controller, player.isSneaking() ? GuiHandler.TEXTURE_C : GuiHandler.TEXTURE_B);
+                return true;
+            }
         }
 
         return false;
@@ -147,24 +163,35 @@ public class BlockPortal extends BlockContainer
     @Override
     public void onEntityCollidedWithBlock(World world, int x, int y, int z, Entity entity)
     {
-        if (!world.isRemote)
+        if (!world.isRemote && !PortalCooldowns.touch(entity)) // Entities idling in the portal stop here
         {
             if (EntityManager.isEntityFitForTravel(entity))
             {
-                if (entity instanceof EntityPlayer)
+                TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
+
+                if (controller != null && TeleportQueue.add(entity, controller) && entity instanceof EntityPlayer)
                 {
                     ((EntityPlayer) entity).closeScreen();
                 }
+            }
+            else
+            {
+                EntityManager.setEntityPortalCooldown(entity);
+            }
+        }
+    }
 
-                TileEntity t = world.getTileEntity(x, y, z);
+    @Override
+    public void onNeighborBlockChange(World world, int x, int y, int z, Block block)
+    {
+        if (!world.isRemote)
+        {
+            TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
 
-                if (t instanceof TilePortal)
-                {
-                    ((TilePortal) t).onEntityCollidedWithBlock(entity);
-                }
+            if (controller != null)
+            {
+                controller.invalidateExitLocations();
             }
-
-            EntityManager.setEntityPortalCooldown(entity);
         }
     }
 
@@ -183,15 +210,14 @@ public class BlockPortal extends BlockContainer
             return;
         }
 
-        TileEntity tile = world.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
 
-        if (!(tile instanceof TilePortal))
+        if (controller == null)
         {
             return;
         }
 
         int metadata = world.getBlockMetadata(x, y, z);
-        TileController controller = ((TilePortal) tile).getPortalController();
         TileModuleManipulator module = controller == null ? null : controller.getModuleManipulator();
         boolean doSounds = !CommonProxy.disableSounds && random.nextInt(100) == 0, doParticles = !CommonProxy.disableParticles;
 
@@ -286,12 +312,10 @@ public class BlockPortal extends BlockContainer
     @Override
     public void setBlockBoundsBasedOnState(IBlockAccess blockAccess, int x, int y, int z)
     {
-        TileEntity tile = blockAccess.getTileEntity(x, y, z);
+        TileController controller = PortalBlockIndex.getPortalController(blockAccess, x, y, z);
 
-        if (tile instanceof TilePortal)
+        if (controller != null)
         {
-            TilePortal portal = (TilePortal) tile;
-            TileController controller = portal.getPortalController();
             TileModuleManipulator manip = controller == null ? null : controller.getModuleManipulator();
 
             if (controller != null && manip != null && manip.isPortalInvisible())
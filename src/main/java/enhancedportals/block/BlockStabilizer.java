@@ -99,6 +99,20 @@ public class BlockStabilizer extends BlockContainer
         return false;
     }
 
+    @Override
+    public void onNeighborBlockChange(World world, int x, int y, int z, Block block)
+    {
+        if (!world.isRemote)
+        {
+            TileEntity tile = world.getTileEntity(x, y, z);
+
+            if (tile instanceof TileStabilizer)
+            {
+                ((TileStabilizer) tile).onNeighborBlockChange();
+            }
+        }
+    }
+
     @Override
     public void registerBlockIcons(IIconRegister iconRegister)
     {
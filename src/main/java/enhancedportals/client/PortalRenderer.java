@@ -10,8 +10,8 @@ import net.minecraft.world.IBlockAccess;
 import net.minecraftforge.fluids.FluidContainerRegistry;
 import cpw.mods.fml.client.registry.ISimpleBlockRenderingHandler;
 import enhancedportals.block.BlockPortal;
+import enhancedportals.portal.PortalBlockIndex;
 import enhancedportals.tileentity.TileController;
-import enhancedportals.tileentity.TilePortal;
 
 public class PortalRenderer implements ISimpleBlockRenderingHandler
 {
@@ -39,8 +39,7 @@ public class PortalRenderer implements ISimpleBlockRenderingHandler
     @Override
     public boolean renderWorldBlock(IBlockAccess world, int x, int y, int z, Block block, int modelId, RenderBlocks renderer)
     {
-        TilePortal portal = (TilePortal) world.getTileEntity(x, y, z);
-        TileController controller = portal.getPortalController();
+        TileController controller = PortalBlockIndex.getPortalController(world, x, y, z);
         Tessellator tessellator = Tessellator.instance;
         int meta = world.getBlockMetadata(x, y, z), light = 230, colour = BlockPortal.instance.colorMultiplier(world, x, y, z);
 
@@ -55,7 +55,7 @@ public class CommonProxy
     public NetworkManager networkManager;
     public static boolean forceShowFrameOverlays, disableSounds, disableParticles, portalsDestroyBlocks, fasterPortalCooldown, requirePower;
     public static double powerMultiplier, powerStorageMultiplier;
-    public static int activePortalsPerRow = 2;
+    public static int activePortalsPerRow = 2, portalBuildTime = 5;
     static Configuration config;
     static File craftingDir;
 
@@ -141,6 +141,7 @@ public class CommonProxy
         powerMultiplier = config.get("Power", "PowerMultiplier", 1.0).getDouble(1.0);
         powerStorageMultiplier = config.get("Power", "DBSPowerStorageMultiplier", 1.0).getDouble(1.0);
         activePortalsPerRow = config.get("Portal", "ActivePortalsPerRow", 2).getInt(2);
+        portalBuildTime = config.get("Portal", "PortalBuildTimePerTick", 5).getInt(5);
         config.save();
 
         if (powerMultiplier < 0)
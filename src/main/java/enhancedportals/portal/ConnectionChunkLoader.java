@@ -0,0 +1,314 @@
+package enhancedportals.portal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.ForgeChunkManager;
+import net.minecraftforge.common.ForgeChunkManager.LoadingCallback;
+import net.minecraftforge.common.ForgeChunkManager.Ticket;
+import net.minecraftforge.common.ForgeChunkManager.Type;
+import enhancedportals.EnhancedPortals;
+import enhancedportals.tileentity.TileController;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.PackedCoordinates;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Keeps the exit of each active connection loaded until the connection terminates, so entities and transfers never have to wait for it. Each dimension with exits in it has a single Forge ticket, holding as many chunks as Forge allows the mod per ticket; connections whose exits share a chunk share it on the ticket.
+ */
+public class ConnectionChunkLoader implements LoadingCallback
+{
+    /***
+     * The exit chunk a controller is keeping loaded.
+     */
+    static class Hold
+    {
+        final WorldCoordinates owner;
+        final int dimension;
+        final long chunk;
+
+        Hold(WorldCoordinates owner, int dimension, long chunk)
+        {
+            this.owner = owner;
+            this.dimension = dimension;
+            this.chunk = chunk;
+        }
+    }
+
+    /***
+     * The ticket of a dimension, and how many holds there are on each chunk it keeps loaded. Chunks held while the ticket was full wait until {@link #forceWaiting} finds room for them.
+     */
+    static class Loader
+    {
+        final Ticket ticket;
+        final LongMap<Integer> chunks = new LongMap<Integer>();
+
+        Loader(Ticket ticket)
+        {
+            this.ticket = ticket;
+            ticket.setChunkListDepth(ForgeChunkManager.getMaxChunkDepthFor(EnhancedPortals.ID));
+        }
+    }
+
+    /*** Holds of active controllers, by the controller's dimension and {@link PackedCoordinates} ***/
+    static HashMap<Integer, LongMap<Hold>> holds = new HashMap<Integer, LongMap<Hold>>();
+
+    /*** Loaders by the dimension of the exits they keep loaded ***/
+    static HashMap<Integer, Loader> loaders = new HashMap<Integer, Loader>();
+
+    static void add(Hold hold, WorldServer world)
+    {
+        remove(hold.owner.dimension, PackedCoordinates.pack(hold.owner));
+        Loader loader = getLoader(world);
+
+        if (loader == null)
+        {
+            EnhancedPortals.logger.warn("Couldn't get a chunk loading ticket for dimension " + world.provider.dimensionId + ", the exit of " + hold.owner + " may unload");
+            return;
+        }
+
+        LongMap<Hold> dimension = holds.get(hold.owner.dimension);
+
+        if (dimension == null)
+        {
+            dimension = new LongMap<Hold>();
+            holds.put(hold.owner.dimension, dimension);
+        }
+
+        dimension.put(PackedCoordinates.pack(hold.owner), hold);
+        Integer count = loader.chunks.get(hold.chunk);
+
+        if (count != null)
+        {
+            loader.chunks.put(hold.chunk, count + 1);
+        }
+        else if (loader.ticket.getChunkList().size() >= loader.ticket.getMaxChunkListDepth())
+        {
+            loader.chunks.put(hold.chunk, 1);
+            EnhancedPortals.logger.warn("The chunk loading ticket for dimension " + hold.dimension + " is full, the exit of " + hold.owner + " may unload until another exit is released");
+        }
+        else
+        {
+            loader.chunks.put(hold.chunk, 1);
+            ForgeChunkManager.forceChunk(loader.ticket, getChunk(hold.chunk));
+        }
+
+        writeHolds(hold.dimension, loader);
+    }
+
+    public static void clear()
+    {
+        holds.clear();
+        loaders.clear();
+    }
+
+    /***
+     * Forces held chunks that couldn't be forced when the ticket was full, for as long as it has room.
+     */
+    static void forceWaiting(Loader loader)
+    {
+        Set<ChunkCoordIntPair> forced = loader.ticket.getChunkList();
+        int room = loader.ticket.getMaxChunkListDepth() - forced.size();
+
+        for (long chunk : loader.chunks.keys())
+        {
+            if (room <= 0)
+            {
+                return;
+            }
+
+            ChunkCoordIntPair pair = getChunk(chunk);
+
+            if (!forced.contains(pair))
+            {
+                ForgeChunkManager.forceChunk(loader.ticket, pair);
+                room--;
+            }
+        }
+    }
+
+    static ChunkCoordIntPair getChunk(long chunk)
+    {
+        return new ChunkCoordIntPair((int) chunk, (int) (chunk >> 32));
+    }
+
+    static Loader getLoader(WorldServer world)
+    {
+        Loader loader = loaders.get(world.provider.dimensionId);
+
+        if (loader == null)
+        {
+            Ticket ticket = ForgeChunkManager.requestTicket(EnhancedPortals.instance, world, Type.NORMAL);
+
+            if (ticket == null)
+            {
+                return null;
+            }
+
+            loader = new Loader(ticket);
+            loaders.put(world.provider.dimensionId, loader);
+        }
+
+        return loader;
+    }
+
+    /***
+     * Forces the chunk of the exit to stay loaded until {@link #release} is called for the controller. Replaces any exit the controller was already keeping loaded.
+     */
+    public static void keepLoaded(TileController controller, WorldCoordinates exit)
+    {
+        release(controller);
+        WorldServer world = exit.getWorld();
+
+        if (world != null)
+        {
+            add(new Hold(controller.getWorldCoordinates(), exit.dimension, ChunkCoordIntPair.chunkXZ2Int(exit.posX >> 4, exit.posZ >> 4)), world);
+        }
+    }
+
+    static void readHolds(NBTTagCompound tag, int dimension, List<Hold> read)
+    {
+        if (tag.hasKey("ChunkX")) // Tickets used to be one per connection, with the owner and chunk in the ticket itself
+        {
+            read.add(new Hold(new WorldCoordinates(tag), dimension, ChunkCoordIntPair.chunkXZ2Int(tag.getInteger("ChunkX"), tag.getInteger("ChunkZ"))));
+            return;
+        }
+
+        NBTTagList list = tag.getTagList("Holds", 10);
+
+        for (int i = 0; i < list.tagCount(); i++)
+        {
+            NBTTagCompound t = list.getCompoundTagAt(i);
+            read.add(new Hold(new WorldCoordinates(t), dimension, ChunkCoordIntPair.chunkXZ2Int(t.getInteger("ChunkX"), t.getInteger("ChunkZ"))));
+        }
+    }
+
+    public static void release(TileController controller)
+    {
+        remove(controller.getWorldObj().provider.dimensionId, PackedCoordinates.pack(controller.getChunkCoordinates()));
+    }
+
+    /***
+     * Removes the hold of the controller at the specified location, unforcing its chunk if nothing else holds it.
+     */
+    static void remove(int ownerDimension, long owner)
+    {
+        LongMap<Hold> dimension = holds.get(ownerDimension);
+        Hold hold = dimension == null ? null : dimension.remove(owner);
+        Loader loader = hold == null ? null : loaders.get(hold.dimension);
+
+        if (loader == null)
+        {
+            return;
+        }
+
+        Integer count = loader.chunks.get(hold.chunk);
+
+        if (count != null && count > 1)
+        {
+            loader.chunks.put(hold.chunk, count - 1);
+        }
+        else
+        {
+            loader.chunks.remove(hold.chunk);
+            ForgeChunkManager.unforceChunk(loader.ticket, getChunk(hold.chunk));
+            forceWaiting(loader);
+        }
+
+        writeHolds(hold.dimension, loader);
+    }
+
+    /***
+     * Forgets the loader of a dimension that's being unloaded. Its ticket is saved with the world and handed back to {@link #ticketsLoaded} when it loads again.
+     */
+    public static void unload(World world)
+    {
+        if (!world.isRemote)
+        {
+            loaders.remove(world.provider.dimensionId);
+        }
+    }
+
+    /***
+     * Saves every hold on the dimension's ticket in the ticket itself, so they can be restored when the world loads.
+     */
+    static void writeHolds(int dimension, Loader loader)
+    {
+        NBTTagList list = new NBTTagList();
+
+        for (LongMap<Hold> owners : holds.values())
+        {
+            for (Hold hold : owners.values())
+            {
+                if (hold.dimension == dimension)
+                {
+                    NBTTagCompound t = new NBTTagCompound();
+                    hold.owner.writeToNBT(t);
+                    t.setInteger("ChunkX", (int) hold.chunk);
+                    t.setInteger("ChunkZ", (int) (hold.chunk >> 32));
+                    list.appendTag(t);
+                }
+            }
+        }
+
+        loader.ticket.getModData().setTag("Holds", list);
+    }
+
+    /***
+     * Restores the holds saved with the world's tickets onto a single ticket, releasing the rest. Holds whose controller is loaded, but no longer active, are dropped.
+     */
+    @Override
+    public void ticketsLoaded(List<Ticket> loaded, World world)
+    {
+        if (loaded.isEmpty())
+        {
+            return;
+        }
+
+        int dimension = world.provider.dimensionId;
+        ArrayList<Hold> read = new ArrayList<Hold>();
+
+        for (int i = 0; i < loaded.size(); i++)
+        {
+            readHolds(loaded.get(i).getModData(), dimension, read);
+
+            if (i > 0 || loaders.containsKey(dimension))
+            {
+                ForgeChunkManager.releaseTicket(loaded.get(i));
+            }
+        }
+
+        if (!loaders.containsKey(dimension))
+        {
+            Ticket ticket = loaded.get(0);
+            ticket.getModData().removeTag("ChunkX");
+            ticket.getModData().removeTag("ChunkZ");
+            loaders.put(dimension, new Loader(ticket));
+        }
+
+        for (Hold hold : read)
+        {
+            if (hold.owner.isChunkLoaded())
+            {
+                TileEntity tile = hold.owner.getLoadedTileEntity();
+
+                if (!(tile instanceof TileController) || !((TileController) tile).isPortalActive())
+                {
+                    continue;
+                }
+            }
+
+            add(hold, (WorldServer) world);
+        }
+
+        writeHolds(dimension, loaders.get(dimension));
+    }
+}
@@ -0,0 +1,205 @@
+package enhancedportals.portal;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import enhancedportals.utility.LongMap;
+
+/***
+ * Connections held by a stabilizer. Each connection is one record in a dense array, and is found from either end by its {@link GlyphAddress}. Removal swaps the last record into the gap, so lookup, adding and removing are all constant time.
+ */
+public class ConnectionTable
+{
+    public static class Connection
+    {
+        public final long dialler, receiver;
+        public final int priority;
+        int index;
+        long order;
+
+        Connection(long dialler, long receiver, int priority)
+        {
+            this.dialler = dialler;
+            this.receiver = receiver;
+            this.priority = priority;
+        }
+
+        public long getOther(long address)
+        {
+            return address == dialler ? receiver : dialler;
+        }
+    }
+
+    static final Comparator<Connection> ESTABLISHED_ORDER = new Comparator<Connection>()
+    {
+        @Override
+        public int compare(Connection a, Connection b)
+        {
+            return a.order < b.order ? -1 : a.order > b.order ? 1 : 0;
+        }
+    };
+
+    /*** Lowest priority first, and the most recently established first within a priority ***/
+    public static final Comparator<Connection> SHEDDING_ORDER = new Comparator<Connection>()
+    {
+        @Override
+        public int compare(Connection a, Connection b)
+        {
+            if (a.priority != b.priority)
+            {
+                return a.priority < b.priority ? -1 : 1;
+            }
+
+            return a.order > b.order ? -1 : a.order < b.order ? 1 : 0;
+        }
+    };
+
+    Connection[] connections = new Connection[4];
+    LongMap<Connection> byAddress = new LongMap<Connection>();
+    int size;
+    long nextOrder;
+
+    /***
+     * @return False if either portal is already part of a connection
+     */
+    public boolean add(long dialler, long receiver, int priority)
+    {
+        if (byAddress.containsKey(dialler) || byAddress.containsKey(receiver))
+        {
+            return false;
+        }
+
+        if (size == connections.length)
+        {
+            connections = Arrays.copyOf(connections, size * 2);
+        }
+
+        Connection connection = new Connection(dialler, receiver, priority);
+        connection.index = size;
+        connection.order = nextOrder++;
+        connections[size++] = connection;
+        byAddress.put(dialler, connection);
+        byAddress.put(receiver, connection);
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(connections, 0, size, null);
+        byAddress.clear();
+        size = 0;
+    }
+
+    /***
+     * Gets the connection the portal is part of, at either end.
+     */
+    public Connection get(long address)
+    {
+        return byAddress.get(address);
+    }
+
+    /***
+     * Gets the portal at the other end of the portal's connection.
+     *
+     * @return {@link GlyphAddress#NONE} if the portal isn't connected
+     */
+    public long getOther(long address)
+    {
+        Connection connection = byAddress.get(address);
+        return connection == null ? GlyphAddress.NONE : connection.getOther(address);
+    }
+
+    public boolean isDialler(long address)
+    {
+        Connection connection = byAddress.get(address);
+        return connection != null && connection.dialler == address;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean isReceiver(long address)
+    {
+        Connection connection = byAddress.get(address);
+        return connection != null && connection.receiver == address;
+    }
+
+    /***
+     * Reads the list of Key (dialler) and Value (receiver) glyph strings that stabilizers have always saved, along with each connection's priority. Connections are read back in the order they were established.
+     */
+    public void readFromNBT(NBTTagCompound tag, String name)
+    {
+        clear();
+        NBTTagList list = tag.getTagList(name, 10);
+
+        for (int i = 0; i < list.tagCount(); i++)
+        {
+            NBTTagCompound t = list.getCompoundTagAt(i);
+            long dialler = GlyphAddress.fromString(t.getString("Key")), receiver = GlyphAddress.fromString(t.getString("Value"));
+
+            if (GlyphAddress.isValid(dialler) && GlyphAddress.isValid(receiver))
+            {
+                add(dialler, receiver, t.getInteger("Priority"));
+            }
+        }
+    }
+
+    /***
+     * Removes the connection the portal is part of, at either end.
+     *
+     * @return The removed connection, or null if there wasn't one
+     */
+    public Connection remove(long address)
+    {
+        Connection connection = byAddress.get(address);
+
+        if (connection == null)
+        {
+            return null;
+        }
+
+        byAddress.remove(connection.dialler);
+        byAddress.remove(connection.receiver);
+        Connection last = connections[--size];
+        connections[connection.index] = last;
+        last.index = connection.index;
+        connections[size] = null;
+        return connection;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /***
+     * Copies the connections into a new array, which isn't affected by later changes to the table.
+     */
+    public Connection[] snapshot()
+    {
+        return Arrays.copyOf(connections, size);
+    }
+
+    public void writeToNBT(NBTTagCompound tag, String name)
+    {
+        NBTTagList list = new NBTTagList();
+
+        Connection[] connections = snapshot();
+        Arrays.sort(connections, ESTABLISHED_ORDER);
+
+        for (int i = 0; i < connections.length; i++)
+        {
+            NBTTagCompound t = new NBTTagCompound();
+            t.setString("Key", GlyphAddress.toString(connections[i].dialler));
+            t.setString("Value", GlyphAddress.toString(connections[i].receiver));
+            t.setInteger("Priority", connections[i].priority);
+            list.appendTag(t);
+        }
+
+        tag.setTag(name, list);
+    }
+}
@@ -0,0 +1,106 @@
+package enhancedportals.portal;
+
+import net.minecraft.tileentity.TileEntity;
+import enhancedportals.tileentity.TileController;
+import enhancedportals.tileentity.TileTransferEnergy;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Carries energy from the sending Transfer Energy modules of a portal to the receiving modules of the portal it's connected to. Each end of a connection owns one, run by its controller every tick. The energy of all the senders is pooled and handed out to the receivers in turn, starting one further along each tick, then taken from the senders; both sides come from the controllers' component caches, so nothing is looked up in the world while the exit stays loaded.
+ */
+public class EnergyBus
+{
+    /*** Ticks to wait before looking for an exit controller that wasn't loaded ***/
+    static final int RETRY_DELAY = 20;
+
+    final TileController entry;
+    TileController exit;
+    int nextReceiver, retryIn;
+
+    public EnergyBus(TileController entry)
+    {
+        this.entry = entry;
+    }
+
+    TileController getExit()
+    {
+        if (exit != null && !exit.isInvalid() && !exit.isUnloaded())
+        {
+            return exit;
+        }
+
+        exit = null;
+
+        if (retryIn > 0)
+        {
+            retryIn--;
+            return null;
+        }
+
+        WorldCoordinates destination = entry.getDestinationLocation();
+        TileEntity tile = destination == null ? null : destination.getLoadedTileEntity();
+
+        if (tile instanceof TileController)
+        {
+            exit = (TileController) tile;
+        }
+        else
+        {
+            retryIn = RETRY_DELAY;
+        }
+
+        return exit;
+    }
+
+    /***
+     * Moves as much energy across the connection as the receivers will take.
+     */
+    public void update()
+    {
+        TileTransferEnergy[] senders = entry.getTransferEnergyTiles();
+        int available = 0;
+
+        for (TileTransferEnergy sender : senders)
+        {
+            if (sender.isSending)
+            {
+                available += sender.storage.getEnergyStored();
+            }
+        }
+
+        if (available == 0)
+        {
+            return;
+        }
+
+        TileController exit = getExit();
+
+        if (exit == null)
+        {
+            return;
+        }
+
+        TileTransferEnergy[] receivers = exit.getTransferEnergyTiles();
+        int moved = 0;
+
+        for (int i = 0; i < receivers.length && moved < available; i++)
+        {
+            TileTransferEnergy receiver = receivers[(nextReceiver + i) % receivers.length];
+
+            if (!receiver.isSending)
+            {
+                moved += receiver.storage.receiveEnergy(available - moved, false);
+            }
+        }
+
+        nextReceiver = receivers.length == 0 ? 0 : (nextReceiver + 1) % receivers.length;
+
+        for (int i = 0; i < senders.length && moved > 0; i++)
+        {
+            if (senders[i].isSending)
+            {
+                moved -= senders[i].storage.extractEnergy(moved, false);
+            }
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package enhancedportals.portal;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityList;
 import net.minecraft.entity.item.EntityBoat;
+import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.entity.item.EntityXPOrb;
 import net.minecraft.entity.passive.EntityHorse;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
@@ -25,7 +28,6 @@ import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.util.ForgeDirection;
 import net.minecraftforge.fluids.BlockFluidBase;
 import enhancedportals.EnhancedPortals;
-import enhancedportals.block.BlockPortal;
 import enhancedportals.item.ItemPortalModule;
 import enhancedportals.network.CommonProxy;
 import enhancedportals.tileentity.TileController;
@@ -35,34 +37,38 @@ public class EntityManager
 {
     static final int PLAYER_COOLDOWN_RATE = 10;
 
-    static ChunkCoordinates getActualExitLocation(Entity entity, TileController controller)
-    {
-        World world = controller.getWorldObj();
-        int entityHeight = Math.round(entity.height);
-        boolean horizontal = controller.portalType == 3;
+    /*** Items that have come out of each portal this tick, which later items can be merged into ***/
+    static HashMap<TileController, ArrayList<EntityItem>> arrivals = new HashMap<TileController, ArrayList<EntityItem>>();
+    static int arrivalsTick;
 
-        forloop:
-        for (ChunkCoordinates c : new ArrayList<ChunkCoordinates>(controller.getPortals()))
+    /***
+     * Recreates an item or experience orb in another world. Plain items have their fields copied directly; orbs, whose health is private, and anything carrying Forge entity data go through NBT so nothing is lost.
+     */
+    static Entity copyDrop(Entity entity, WorldServer world)
+    {
+        if (entity instanceof EntityXPOrb || !entity.getEntityData().hasNoTags())
         {
-            for (int i = 0; i < entityHeight; i++)
-            {
-                if (world.getBlock(c.posX, c.posY + i, c.posZ) != BlockPortal.instance && !world.isAirBlock(c.posX, c.posY + i, c.posZ))
-                {
-                    continue forloop;
-                }
-            }
-
-            if (horizontal && !world.isAirBlock(c.posX, c.posY + 1, c.posZ))
-            {
-                return new ChunkCoordinates(c.posX, c.posY - 1, c.posZ);
-            }
-            else
-            {
-                return new ChunkCoordinates(c.posX, c.posY, c.posZ);
-            }
+            NBTTagCompound tag = new NBTTagCompound();
+            entity.writeToNBTOptional(tag);
+            return EntityList.createEntityFromNBT(tag, world);
         }
 
-        return null;
+        EntityItem item = (EntityItem) entity, copy = new EntityItem(world, item.posX, item.posY, item.posZ, item.getEntityItem().copy());
+        copy.delayBeforeCanPickup = item.delayBeforeCanPickup;
+        copy.age = item.age;
+        copy.lifespan = item.lifespan;
+        copy.func_145797_a(item.func_145798_i()); // Owner
+        copy.func_145799_b(item.func_145800_j()); // Thrower
+        copy.motionX = item.motionX;
+        copy.motionY = item.motionY;
+        copy.motionZ = item.motionZ;
+        copy.timeUntilPortal = item.timeUntilPortal;
+        return copy;
+    }
+
+    static ChunkCoordinates getActualExitLocation(Entity entity, TileController controller)
+    {
+        return controller.getExitLocation(Math.round(entity.height));
     }
 
     static float getRotation(Entity entity, TileController controller, ChunkCoordinates loc)
@@ -199,9 +205,58 @@ public class EntityManager
         entity.velocityChanged = true;
     }
 
+    /***
+     * Only matches EntityItem and EntityXPOrb themselves. Subclasses may have fields of their own that {@link #copyDrop} doesn't know about, so they take the normal entity path.
+     */
+    static boolean isDrop(Entity entity)
+    {
+        return (entity.getClass() == EntityItem.class || entity.getClass() == EntityXPOrb.class) && entity.ridingEntity == null && entity.riddenByEntity == null;
+    }
+
     public static boolean isEntityFitForTravel(Entity entity)
     {
-        return entity != null && entity.timeUntilPortal == 0;
+        return entity != null && entity.timeUntilPortal == 0 && !PortalCooldowns.isCoolingDown(entity);
+    }
+
+    /***
+     * Adds the item to one that came out of the same portal this tick, if they stack.
+     * 
+     * @return The item it was added to, or null if it needs spawning itself
+     */
+    static EntityItem mergeArrival(EntityItem item, TileController exit)
+    {
+        int tick = MinecraftServer.getServer().getTickCounter();
+
+        if (tick != arrivalsTick)
+        {
+            arrivals.clear();
+            arrivalsTick = tick;
+        }
+
+        ArrayList<EntityItem> items = arrivals.get(exit);
+
+        if (items == null)
+        {
+            items = new ArrayList<EntityItem>();
+            arrivals.put(exit, items);
+        }
+
+        ItemStack stack = item.getEntityItem();
+
+        for (EntityItem other : items)
+        {
+            ItemStack otherStack = other.getEntityItem();
+
+            if (!other.isDead && otherStack.isStackable() && otherStack.getItem() == stack.getItem() && otherStack.getItemDamage() == stack.getItemDamage() && ItemStack.areItemStackTagsEqual(otherStack, stack) && otherStack.stackSize + stack.stackSize <= otherStack.getMaxStackSize())
+            {
+                otherStack.stackSize += stack.stackSize;
+                other.setEntityItemStack(otherStack);
+                return other;
+            }
+        }
+
+        items.add(item);
+        return null;
     }
 
     public static void setEntityPortalCooldown(Entity entity)
@@ -211,14 +266,22 @@ public class EntityManager
             return;
         }
 
+        if (entity.timeUntilPortal == -1) // Try again next tick
+        {
+            entity.timeUntilPortal = 0;
+            return;
+        }
+
         if (CommonProxy.fasterPortalCooldown || entity instanceof EntityPlayer || entity instanceof EntityMinecart || entity instanceof EntityBoat || entity instanceof EntityHorse)
         {
-            entity.timeUntilPortal = entity.timeUntilPortal == -1 ? 0 : PLAYER_COOLDOWN_RATE;
+            entity.timeUntilPortal = PLAYER_COOLDOWN_RATE;
         }
         else
         {
-            entity.timeUntilPortal = entity.timeUntilPortal == -1 ? 0 : 300; // Reduced to 300 ticks from 900.
+            entity.timeUntilPortal = 300; // Reduced to 300 ticks from 900.
         }
+
+        PortalCooldowns.start(entity, entity.timeUntilPortal);
     }
 
     public static void teleportEntityHighestInstability(Entity par1Entity) // TODO: CRIMSON
@@ -234,6 +297,41 @@ public class EntityManager
         transferEntityWithinDimension(par1Entity, spawn.posX, spawn.posY + 1, spawn.posZ, 0f, -1, -1, false);
     }
 
+    /***
+     * Moves an item or experience orb without the NBT round trip other entities go through. Within a dimension it's just moved; into another it's copied field by field. Items are merged into any that came out of the same portal this tick and stack with them.
+     */
+    static Entity transferDrop(Entity entity, double x, double y, double z, float yaw, WorldServer world, int touchedPortalType, int exitPortalType, boolean keepMomentum, TileController exit)
+    {
+        if (!isEntityFitForTravel(entity))
+        {
+            return entity;
+        }
+
+        Entity moved = entity.worldObj == world ? entity : copyDrop(entity, world);
+        handleMomentum(moved, touchedPortalType, exitPortalType, yaw, keepMomentum);
+        moved.setLocationAndAngles(x, y, z, yaw, entity.rotationPitch);
+        EntityItem merged = moved instanceof EntityItem ? mergeArrival((EntityItem) moved, exit) : null;
+
+        if (merged != null)
+        {
+            entity.setDead();
+            return merged;
+        }
+        else if (moved != entity)
+        {
+            entity.setDead();
+            moved.forceSpawn = true;
+            world.spawnEntityInWorld(moved);
+        }
+        else
+        {
+            world.updateEntityWithOptionalForce(moved, false);
+        }
+
+        setEntityPortalCooldown(moved);
+        return moved;
+    }
+
     static Entity transferEntity(Entity entity, double x, double y, double z, float yaw, WorldServer world, int touchedPortalType, int exitPortalType, boolean keepMomentum)
     {
         if (entity.worldObj.provider.dimensionId == world.provider.dimensionId)
@@ -272,6 +370,12 @@ public class EntityManager
                 keepMomentum = manip.shouldKeepMomentumOnTeleport();
             }
 
+            if (isDrop(entity))
+            {
+                transferDrop(entity, exitLoc.posX + 0.5, exitLoc.posY, exitLoc.posZ + 0.5, getRotation(entity, exit, exitLoc), (WorldServer) exit.getWorldObj(), entry.portalType, exit.portalType, keepMomentum, exit);
+                return;
+            }
+
             while (entity.ridingEntity != null)
             {
                 entity = entity.ridingEntity;
@@ -0,0 +1,171 @@
+package enhancedportals.portal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.nbt.NBTTagCompound;
+
+/***
+ * Packs a glyph identifier into a single long. The lowest 4 bits hold the glyph count, followed by 5 bits per glyph (9 glyphs, 28 symbols). Used as the key type in {@link NetworkManager} so lookups don't need to build strings.
+ */
+public class GlyphAddress
+{
+    /*** Returned for missing or invalid addresses. Never produced by packing, as the top bits of a packed address are always zero. ***/
+    public static final long NONE = -1L;
+
+    /*** The packed form of an empty identifier ***/
+    public static final long EMPTY = 0L;
+
+    public static final int MAX_GLYPHS = 9, GLYPH_COUNT = 28;
+    static final int LENGTH_BITS = 4, GLYPH_BITS = 5, GLYPH_MASK = (1 << GLYPH_BITS) - 1;
+
+    public static long fromGlyphs(List<Integer> glyphs)
+    {
+        if (glyphs == null || glyphs.size() > MAX_GLYPHS)
+        {
+            return NONE;
+        }
+
+        long address = glyphs.size();
+
+        for (int i = 0; i < glyphs.size(); i++)
+        {
+            int glyph = glyphs.get(i);
+
+            if (glyph < 0 || glyph >= GLYPH_COUNT)
+            {
+                return NONE;
+            }
+
+            address |= (long) glyph << LENGTH_BITS + i * GLYPH_BITS;
+        }
+
+        return address;
+    }
+
+    public static long fromIdentifier(GlyphIdentifier identifier)
+    {
+        return identifier == null ? NONE : fromGlyphs(identifier.getGlyphs());
+    }
+
+    /***
+     * Parses the legacy string form (glyphs separated by {@link GlyphIdentifier#GLYPH_SEPERATOR}) without allocating.
+     */
+    public static long fromString(String str)
+    {
+        if (str == null)
+        {
+            return NONE;
+        }
+        else if (str.length() == 0)
+        {
+            return EMPTY;
+        }
+
+        long address = 0;
+        int count = 0, glyph = -1;
+
+        for (int i = 0; i <= str.length(); i++)
+        {
+            char c = i == str.length() ? GlyphIdentifier.GLYPH_SEPERATOR.charAt(0) : str.charAt(i);
+
+            if (c >= '0' && c <= '9')
+            {
+                glyph = (glyph == -1 ? 0 : glyph * 10) + (c - '0');
+
+                if (glyph >= GLYPH_COUNT)
+                {
+                    return NONE;
+                }
+            }
+            else if (c == GlyphIdentifier.GLYPH_SEPERATOR.charAt(0) && glyph != -1 && count < MAX_GLYPHS)
+            {
+                address |= (long) glyph << LENGTH_BITS + count * GLYPH_BITS;
+                count++;
+                glyph = -1;
+            }
+            else
+            {
+                return NONE;
+            }
+        }
+
+        return address | count;
+    }
+
+    public static int getGlyph(long address, int index)
+    {
+        return (int) (address >>> LENGTH_BITS + index * GLYPH_BITS) & GLYPH_MASK;
+    }
+
+    public static boolean isValid(long address)
+    {
+        return address != NONE && size(address) <= MAX_GLYPHS && address >>> LENGTH_BITS + size(address) * GLYPH_BITS == 0;
+    }
+
+    /***
+     * Reads an address written by {@link #writeToNBT}, falling back to the legacy string tag written by {@link GlyphIdentifier#writeToNBT}.
+     */
+    public static long readFromNBT(NBTTagCompound tag, String name)
+    {
+        if (tag.hasKey(name, 4))
+        {
+            return tag.getLong(name);
+        }
+        else if (tag.hasKey(name, 8))
+        {
+            return fromString(tag.getString(name));
+        }
+
+        return NONE;
+    }
+
+    public static int size(long address)
+    {
+        return address == NONE ? 0 : (int) (address & (1 << LENGTH_BITS) - 1);
+    }
+
+    public static GlyphIdentifier toIdentifier(long address)
+    {
+        if (address == NONE)
+        {
+            return null;
+        }
+
+        ArrayList<Integer> glyphs = new ArrayList<Integer>(size(address));
+
+        for (int i = 0; i < size(address); i++)
+        {
+            glyphs.add(getGlyph(address, i));
+        }
+
+        return new GlyphIdentifier(glyphs);
+    }
+
+    public static String toString(long address)
+    {
+        if (address == NONE)
+        {
+            return null;
+        }
+
+        StringBuilder builder = new StringBuilder(size(address) * 3);
+
+        for (int i = 0; i < size(address); i++)
+        {
+            if (i > 0)
+            {
+                builder.append(GlyphIdentifier.GLYPH_SEPERATOR);
+            }
+
+            builder.append(getGlyph(address, i));
+        }
+
+        return builder.toString();
+    }
+
+    public static void writeToNBT(NBTTagCompound tag, String name, long address)
+    {
+        tag.setLong(name, address);
+    }
+}
@@ -13,14 +13,19 @@ public class GlyphIdentifier
 
     public static String getGlyphString(ArrayList<Integer> glyph)
     {
-        String s = "";
+        StringBuilder s = new StringBuilder(glyph.size() * 3);
 
-        for (int i : glyph)
+        for (int i = 0; i < glyph.size(); i++)
         {
-            s += GLYPH_SEPERATOR + i;
+            if (i > 0)
+            {
+                s.append(GLYPH_SEPERATOR);
+            }
+
+            s.append(glyph.get(i));
         }
 
-        return s.length() > 0 ? s.substring(GLYPH_SEPERATOR.length()) : "";
+        return s.toString();
     }
 
     public static ArrayList<Integer> parseGlyphString(String str)
@@ -224,6 +229,14 @@ public class GlyphIdentifier
         return glyphs.size();
     }
 
+    /***
+     * @return This identifier packed into a long, or {@link GlyphAddress#NONE} if it can't be represented.
+     */
+    public long toAddress()
+    {
+        return GlyphAddress.fromGlyphs(glyphs);
+    }
+
     @Override
     public String toString()
     {
@@ -1,10 +1,8 @@
 package enhancedportals.portal;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map.Entry;
 
@@ -20,59 +18,87 @@ import com.google.gson.reflect.TypeToken;
 import cpw.mods.fml.common.event.FMLServerStartingEvent;
 import enhancedportals.EnhancedPortals;
 import enhancedportals.tileentity.TileController;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.LongSet;
 import enhancedportals.utility.WorldCoordinates;
 
 public class NetworkManager
 {
-    /*** Stores locations of all portals ***/
-    HashMap<String, WorldCoordinates> portalCoordinates;
+    /*** Stores locations of all portals, keyed by {@link GlyphAddress} ***/
+    LongMap<WorldCoordinates> portalCoordinates;
 
     /*** Reverse lookup for {@link portalCoordinates} ***/
-    HashMap<WorldCoordinates, String> portalCoordinatesReverse;
+    HashMap<WorldCoordinates, Long> portalCoordinatesReverse;
 
     /***
-     * Portal Identifier, Network Identifier. Used for looking up which portal is in which network, quickly.
+     * Portal Address, Network Address. Used for looking up which portal is in which network, quickly.
      ***/
-    HashMap<String, String> portalNetworks;
+    LongMap<Long> portalNetworks;
 
     /***
-     * Network Identifier, Portal Identifier List. Used for looking up all portals in a network, without searching every entry in {@link portalNetworks}
+     * Network Address, Portal Ring. Used for looking up all portals in a network, and the next one to dial, without searching every entry in {@link portalNetworks}
      ***/
-    HashMap<String, ArrayList<String>> networkedPortals;
+    LongMap<NetworkRing> networkedPortals;
 
-    File portalFile, networkFile;
+    /*** Portals by dimension and chunk, for finding nearby ones ***/
+    PortalIndex portalIndex;
+
+    /*** Changes made since {@link registryFile} was last written ***/
+    RegistryJournal journal;
+    RegistryWriter writer;
+
+    /*** Binary snapshot of the registry. The JSON files are only read to migrate older worlds ***/
+    File registryFile, portalFile, networkFile;
     MinecraftServer server;
+    boolean loading;
+
+    /*** Set by the writer thread if a write failed, so the next save writes a full snapshot ***/
+    volatile boolean snapshotRequired;
+
+    /*** Set while the legacy JSON files have been loaded, but not yet replaced by a snapshot ***/
+    volatile boolean migrating;
+
+    /*** Copy of the registry used by all lookups, so they're safe from any thread. Cleared whenever the registry changes, and rebuilt by {@link #getView} ***/
+    volatile RegistryView view;
+
+    /*** Set while the last view built shares the location maps, the network map or the ring map with the manager. Each is copied before it's next changed ***/
+    boolean coordinatesShared, networksShared, ringsShared;
+
+    /*** Networks whose ring has been copied since the last view was built, so it can be changed in place. Every other ring is shared with a view ***/
+    LongSet ownedRings;
 
     public NetworkManager(FMLServerStartingEvent event)
     {
-        portalCoordinates = new HashMap<String, WorldCoordinates>();
-        portalCoordinatesReverse = new HashMap<WorldCoordinates, String>();
-        portalNetworks = new HashMap<String, String>();
-        networkedPortals = new HashMap<String, ArrayList<String>>();
-        server = event.getServer();
-        portalFile = new File(EnhancedPortals.proxy.getWorldDir(), "EP3_PortalLocations.json");
-        networkFile = new File(EnhancedPortals.proxy.getWorldDir(), "EP3_PortalNetworks.json");
+        this(event.getServer(), EnhancedPortals.proxy.getWorldDir());
 
         try
         {
             loadAllData();
         }
-        catch (Exception e)
+        catch (Exception e) // Carrying on would save whatever did load over the registry
         {
-            EnhancedPortals.logger.catching(e);
-            e.printStackTrace();
+            writer.close();
+            throw new RuntimeException("Could not load the portal registry", e);
         }
     }
 
     /***
-     * Creates a new network if one does not already exist
+     * Creates an empty registry that saves to the specified directory, without loading anything from it.
      */
-    private void addNetwork(GlyphIdentifier network)
+    NetworkManager(MinecraftServer server, File directory)
     {
-        if (networkedPortals.get(network.getGlyphString()) == null)
-        {
-            networkedPortals.put(network.getGlyphString(), new ArrayList<String>());
-        }
+        portalCoordinates = new LongMap<WorldCoordinates>();
+        portalCoordinatesReverse = new HashMap<WorldCoordinates, Long>();
+        portalNetworks = new LongMap<Long>();
+        networkedPortals = new LongMap<NetworkRing>();
+        ownedRings = new LongSet();
+        portalIndex = new PortalIndex();
+        this.server = server;
+        registryFile = new File(directory, "EP3_PortalRegistry.dat");
+        portalFile = new File(directory, "EP3_PortalLocations.json");
+        networkFile = new File(directory, "EP3_PortalNetworks.json");
+        journal = new RegistryJournal(new File(directory, "EP3_PortalJournal.dat"));
+        writer = new RegistryWriter();
     }
 
     /***
@@ -80,13 +106,29 @@ public class NetworkManager
      */
     public void addPortal(GlyphIdentifier g, WorldCoordinates w)
     {
-        if (getPortalIdentifier(w) != null || getPortalLocation(g) != null)
+        addPortal(GlyphAddress.fromIdentifier(g), w);
+    }
+
+    /***
+     * Adds a new portal to the system
+     */
+    public synchronized void addPortal(long portal, WorldCoordinates w)
+    {
+        if (portal == GlyphAddress.NONE || w == null || portalCoordinatesReverse.containsKey(w) || portalCoordinates.containsKey(portal))
         {
             return;
         }
 
-        portalCoordinates.put(g.getGlyphString(), w);
-        portalCoordinatesReverse.put(w, g.getGlyphString());
+        unshareCoordinates();
+        portalCoordinates.put(portal, w);
+        portalCoordinatesReverse.put(w, portal);
+        portalIndex.add(portal, w);
+        view = null;
+
+        if (!loading)
+        {
+            journal.recordAdd(portal, w);
+        }
     }
 
     /***
@@ -94,52 +136,127 @@ public class NetworkManager
      */
     public void addPortalToNetwork(GlyphIdentifier portal, GlyphIdentifier network)
     {
-        if (portal == null || network == null || getPortalNetwork(portal) != null)
+        addPortalToNetwork(GlyphAddress.fromIdentifier(portal), GlyphAddress.fromIdentifier(network));
+    }
+
+    /***
+     * Adds a portal to a network
+     */
+    public synchronized void addPortalToNetwork(long portal, long network)
+    {
+        if (portal == GlyphAddress.NONE || network == GlyphAddress.NONE || portalNetworks.containsKey(portal))
         {
             return;
         }
 
-        getNetwork(network).add(portal.getGlyphString());
-        portalNetworks.put(portal.getGlyphString(), network.getGlyphString());
+        unshareNetworks();
+        getNetwork(network).add(portal);
+        portalNetworks.put(portal, network);
+        view = null;
+
+        if (!loading)
+        {
+            journal.recordJoin(portal, network);
+        }
     }
 
     public GlyphIdentifier getDestination(GlyphIdentifier identifier, GlyphIdentifier portalNetwork)
     {
-        ArrayList<String> network = getNetwork(portalNetwork);
-        int index = network.indexOf(identifier.getGlyphString());
+        return GlyphAddress.toIdentifier(getDestination(GlyphAddress.fromIdentifier(identifier), GlyphAddress.fromIdentifier(portalNetwork)));
+    }
 
-        if (index == network.size() - 1)
+    /***
+     * Gets the portal after the specified one in its network
+     * 
+     * @return {@link GlyphAddress#NONE} if the network is empty
+     */
+    public long getDestination(long portal, long network)
+    {
+        NetworkRing ring = getView().networkedPortals.get(network);
+        return ring == null ? GlyphAddress.NONE : ring.next(portal);
+    }
+
+    /***
+     * Gets the portal controller for the specified portal identifier, without loading its dimension or chunk
+     * 
+     * @return Null if it isn't loaded
+     */
+    public TileController getLoadedPortalController(GlyphIdentifier portal)
+    {
+        WorldCoordinates w = portal == null ? null : getView().portalCoordinates.get(GlyphAddress.fromIdentifier(portal));
+        TileEntity tile = w == null ? null : w.getLoadedTileEntity();
+        return tile instanceof TileController ? (TileController) tile : null;
+    }
+
+    /***
+     * Gets the registered portal closest to the specified location, in the same dimension
+     * 
+     * @return {@link GlyphAddress#NONE} if there are no portals in that dimension
+     */
+    public synchronized long getNearestPortal(WorldCoordinates w)
+    {
+        return w == null ? GlyphAddress.NONE : portalIndex.getNearest(w);
+    }
+
+    /***
+     * Retrieves all the portals for the specified network, ready to be changed. Will create a network if one does not already exist. A ring that's shared with the view is copied first, so only the network being changed is copied
+     */
+    private NetworkRing getNetwork(long network)
+    {
+        if (ringsShared)
         {
-            return new GlyphIdentifier(network.get(0));
+            networkedPortals = new LongMap<NetworkRing>(networkedPortals);
+            ringsShared = false;
         }
-        else
+
+        NetworkRing ring = networkedPortals.get(network);
+
+        if (ring == null)
+        {
+            ring = new NetworkRing();
+            networkedPortals.put(network, ring);
+            ownedRings.add(network);
+        }
+        else if (ownedRings.add(network))
         {
-            return new GlyphIdentifier(network.get(index + 1));
+            ring = new NetworkRing(ring);
+            networkedPortals.put(network, ring);
         }
+
+        return ring;
+    }
+
+    public int getNetworkSize(GlyphIdentifier nID)
+    {
+        NetworkRing ring = getView().networkedPortals.get(GlyphAddress.fromIdentifier(nID));
+        return ring == null || ring.isEmpty() ? -1 : ring.size();
     }
 
     /***
-     * Retrieves all the portals for the specified network. Will create a network if one does not already exist
+     * Gets the packed address of the specified controller
+     * 
+     * @return {@link GlyphAddress#NONE} if one is not set
      */
-    private ArrayList<String> getNetwork(GlyphIdentifier network)
+    public long getPortalAddress(WorldCoordinates w)
     {
-        addNetwork(network);
-
-        return networkedPortals.get(network.getGlyphString());
+        Long address = w == null ? null : getView().portalCoordinatesReverse.get(w);
+        return address == null ? GlyphAddress.NONE : address;
     }
 
-    public int getNetworkSize(GlyphIdentifier nID)
+    /***
+     * Gets the portal controller for the specified portal identifier, loading its dimension and chunk if needed
+     */
+    public TileController getPortalController(GlyphIdentifier portal)
     {
-        ArrayList<String> list = getNetwork(nID);
-        return list.isEmpty() ? -1 : list.size();
+        return getPortalController(GlyphAddress.fromIdentifier(portal));
     }
 
     /***
-     * Gets the portal controller for the specified portal identifier
+     * Gets the portal controller for the specified portal address
      */
-    public TileController getPortalController(GlyphIdentifier portal)
+    public TileController getPortalController(long portal)
     {
-        WorldCoordinates w = getPortalLocation(portal);
+        WorldCoordinates w = getView().portalCoordinates.get(portal);
 
         if (w == null)
         {
@@ -163,14 +280,7 @@ public class NetworkManager
      */
     public GlyphIdentifier getPortalIdentifier(WorldCoordinates w)
     {
-        if (w == null)
-        {
-            return null;
-        }
-
-        String ID = portalCoordinatesReverse.get(w);
-
-        return ID == null ? null : new GlyphIdentifier(portalCoordinatesReverse.get(w));
+        return GlyphAddress.toIdentifier(getPortalAddress(w));
     }
 
     /***
@@ -180,7 +290,7 @@ public class NetworkManager
      */
     public WorldCoordinates getPortalLocation(GlyphIdentifier g)
     {
-        return g == null ? null : portalCoordinates.get(g.getGlyphString());
+        return g == null ? null : getView().portalCoordinates.get(GlyphAddress.fromIdentifier(g));
     }
 
     /***
@@ -195,105 +305,208 @@ public class NetworkManager
             return null;
         }
 
-        String ID = portalNetworks.get(g.getGlyphString());
+        Long network = getView().portalNetworks.get(GlyphAddress.fromIdentifier(g));
+
+        return network == null ? null : GlyphAddress.toIdentifier(network);
+    }
+
+    /***
+     * Gets the addresses of all registered portals in the specified chunk
+     */
+    public synchronized long[] getPortalsInChunk(int dimension, int chunkX, int chunkZ)
+    {
+        return portalIndex.getPortalsInChunk(dimension, chunkX, chunkZ);
+    }
 
-        return ID == null ? null : new GlyphIdentifier(portalNetworks.get(g.getGlyphString()));
+    /***
+     * Gets the addresses of all registered portals within the specified number of blocks of a location, in the same dimension
+     */
+    public synchronized long[] getPortalsInRadius(WorldCoordinates w, int radius)
+    {
+        return w == null ? new long[0] : portalIndex.getPortalsInRadius(w, radius);
+    }
+
+    /***
+     * Returns the current read-only copy of the registry, building a new one if it has changed since the last call. The view takes the manager's maps and rings as they are, and the manager copies only the ones it goes on to change, so a lookup after a change doesn't copy the whole registry. Lookups that don't follow a change don't lock at all.
+     */
+    RegistryView getView()
+    {
+        RegistryView current = view;
+
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                if (view == null)
+                {
+                    view = new RegistryView(this);
+                }
+
+                current = view;
+            }
+        }
+
+        return current;
     }
 
     public boolean hasIdentifier(WorldCoordinates w)
     {
-        return w == null ? null : portalCoordinates.containsValue(w);
+        return w == null ? false : getView().portalCoordinatesReverse.containsKey(w);
     }
 
     public boolean hasNetwork(GlyphIdentifier g)
     {
-        return g == null ? null : portalNetworks.containsKey(g.getGlyphString());
+        return g == null ? false : getView().portalNetworks.containsKey(GlyphAddress.fromIdentifier(g));
     }
 
     public boolean hasNetwork(WorldCoordinates w)
     {
-        return w == null ? null : hasNetwork(getPortalIdentifier(w));
+        if (w == null)
+        {
+            return false;
+        }
+
+        RegistryView current = getView();
+        Long address = current.portalCoordinatesReverse.get(w);
+        return address != null && current.portalNetworks.containsKey(address);
     }
 
+    /***
+     * Loads the last snapshot, then replays the journal on top of it. A snapshot that can't be read is treated as missing, so the journal is still replayed. Worlds that only have the old JSON files are migrated to the binary format. If the journal had any records, or the world was migrated, a fresh snapshot is written straight away.
+     */
     public void loadAllData() throws Exception
     {
-        if (!makeFiles())
-        {
-            return;
-        }
+        boolean migrate = false;
+        loading = true;
 
-        Type type = new TypeToken<HashMap<String, WorldCoordinates>>()
+        try
         {
-        }.getType();
-        Gson gson = new GsonBuilder().enableComplexMapKeySerialization().create();
-        String portalData = FileUtils.readFileToString(portalFile), networkData = FileUtils.readFileToString(networkFile);
+            RegistrySnapshot snapshot = loadSnapshot();
 
-        portalCoordinates = gson.fromJson(portalData, type);
-        portalNetworks = gson.fromJson(networkData, portalNetworks.getClass());
+            if (snapshot != null)
+            {
+                snapshot.apply(this);
+            }
+            else if (portalFile.exists() || networkFile.exists())
+            {
+                loadLegacyData();
+                migrate = true;
+            }
 
-        if (portalCoordinates == null) // because for some reason fromJson can return null
+            journal.replay(this);
+        }
+        finally
         {
-            portalCoordinates = new HashMap<String, WorldCoordinates>();
+            loading = false;
         }
 
-        if (portalNetworks == null) // because for some reason fromJson can return null
+        if (migrate || journal.hasRecordsOnDisk())
         {
-            portalNetworks = new HashMap<String, String>();
+            if (migrate)
+            {
+                EnhancedPortals.logger.info("Migrating " + portalCoordinates.size() + " portals to " + registryFile.getName());
+                migrating = true;
+            }
+
+            submitSnapshot();
         }
+    }
+
+    /***
+     * Reads the JSON files used before the binary registry format.
+     */
+    void loadLegacyData() throws IOException
+    {
+        Type portalType = new TypeToken<HashMap<String, WorldCoordinates>>()
+        {
+        }.getType(), networkType = new TypeToken<HashMap<String, String>>()
+        {
+        }.getType();
+        Gson gson = new GsonBuilder().enableComplexMapKeySerialization().create();
+        HashMap<String, WorldCoordinates> portals = portalFile.exists() ? gson.<HashMap<String, WorldCoordinates>> fromJson(FileUtils.readFileToString(portalFile), portalType) : null;
+        HashMap<String, String> networks = networkFile.exists() ? gson.<HashMap<String, String>> fromJson(FileUtils.readFileToString(networkFile), networkType) : null;
 
-        if (!portalCoordinates.isEmpty())
+        if (portals != null) // because for some reason fromJson can return null
         {
-            for (Entry<String, WorldCoordinates> entry : portalCoordinates.entrySet())
+            for (Entry<String, WorldCoordinates> entry : portals.entrySet())
             {
-                portalCoordinatesReverse.put(entry.getValue(), entry.getKey());
+                addPortal(GlyphAddress.fromString(entry.getKey()), entry.getValue());
             }
         }
 
-        if (!portalNetworks.isEmpty())
+        if (networks != null)
         {
-            for (Entry<String, String> entry : portalNetworks.entrySet())
+            for (Entry<String, String> entry : networks.entrySet())
             {
-                if (networkedPortals.containsKey(entry.getValue()))
-                {
-                    networkedPortals.get(entry.getValue()).add(entry.getKey());
-                }
-                else
-                {
-                    ArrayList<String> list = new ArrayList<String>();
-                    list.add(entry.getKey());
-                    networkedPortals.put(entry.getValue(), list);
-                }
+                addPortalToNetwork(GlyphAddress.fromString(entry.getKey()), GlyphAddress.fromString(entry.getValue()));
             }
         }
     }
 
-    private boolean makeFiles()
+    /***
+     * Reads {@link #registryFile}. If the server stopped between the old snapshot being deleted and the new one taking its place, the new one is read from its temporary file and published. A damaged snapshot is moved aside to a .corrupt file, and loading fails rather than going on to save an empty or outdated registry in its place.
+     *
+     * @return The snapshot, or null if there isn't one yet
+     * @throws IOException If the snapshot is damaged, or a damaged one has been moved aside and not dealt with
+     */
+    RegistrySnapshot loadSnapshot() throws IOException
     {
-        try
+        File temp = RegistryWriter.getTempFile(registryFile), corrupt = new File(registryFile.getParentFile(), registryFile.getName() + ".corrupt");
+        String advice = "Restore it from a backup, or delete " + corrupt.getName() + " to start with an empty portal registry";
+
+        if (!registryFile.exists() && temp.exists())
         {
-            if (!portalFile.exists())
+            try
+            {
+                RegistrySnapshot snapshot = RegistrySnapshot.load(temp);
+                RegistryWriter.publish(temp, registryFile);
+                EnhancedPortals.logger.warn("Restored " + registryFile.getName() + " from " + temp.getName());
+                return snapshot;
+            }
+            catch (IOException e) // Cut short before it was synced, so it never replaced anything
             {
-                portalFile.createNewFile();
+                EnhancedPortals.logger.warn("Ignoring incomplete " + temp.getName() + ": " + e.getMessage());
             }
+        }
 
-            if (!networkFile.exists())
+        if (!registryFile.exists())
+        {
+            if (corrupt.exists())
             {
-                networkFile.createNewFile();
+                throw new IOException(registryFile.getName() + " was damaged and moved to " + corrupt.getName() + ". " + advice);
             }
 
-            return true;
+            return null;
+        }
+
+        try
+        {
+            return RegistrySnapshot.load(registryFile);
         }
         catch (IOException e)
         {
-            e.printStackTrace();
+            RegistryWriter.publish(registryFile, corrupt);
+            throw new IOException(registryFile.getName() + " is damaged (" + e.getMessage() + ") and has been moved to " + corrupt.getName() + ". " + advice, e);
         }
-
-        return false;
     }
 
     public boolean portalIdentifierExists(GlyphIdentifier id)
     {
-        return portalCoordinates.containsKey(id.getGlyphString());
+        return getView().portalCoordinates.containsKey(GlyphAddress.fromIdentifier(id));
+    }
+
+    /***
+     * Replaces the (empty) maps with ones large enough for the specified number of portals and networks, so loading doesn't keep rehashing them.
+     */
+    synchronized void presize(int portals, int networks)
+    {
+        portalCoordinates = new LongMap<WorldCoordinates>(portals);
+        portalCoordinatesReverse = new HashMap<WorldCoordinates, Long>(portals * 2);
+        portalNetworks = new LongMap<Long>(portals);
+        networkedPortals = new LongMap<NetworkRing>(networks);
+        coordinatesShared = networksShared = ringsShared = false;
+        ownedRings.clear();
+        portalIndex.clear();
     }
 
     /***
@@ -301,7 +514,7 @@ public class NetworkManager
      */
     public void removePortal(GlyphIdentifier g)
     {
-        removePortal(g, getPortalLocation(g));
+        removePortal(GlyphAddress.fromIdentifier(g), getPortalLocation(g));
     }
 
     /***
@@ -309,20 +522,41 @@ public class NetworkManager
      */
     public void removePortal(GlyphIdentifier g, WorldCoordinates w)
     {
-        if (g == null || w == null)
+        removePortal(GlyphAddress.fromIdentifier(g), w);
+    }
+
+    /***
+     * Removes a portal
+     */
+    public synchronized void removePortal(long portal, WorldCoordinates w)
+    {
+        if (portal == GlyphAddress.NONE || w == null)
         {
             return;
         }
 
-        GlyphIdentifier n = getPortalNetwork(g);
+        Long network = portalNetworks.get(portal);
 
-        if (n != null)
+        if (network != null)
         {
-            removePortalFromNetwork(g, n);
+            removePortalFromNetwork(portal, network);
         }
 
-        portalCoordinates.remove(g.getGlyphString());
+        unshareCoordinates();
+        WorldCoordinates location = portalCoordinates.remove(portal);
         portalCoordinatesReverse.remove(w);
+
+        if (location != null)
+        {
+            portalIndex.remove(portal, location);
+        }
+
+        view = null;
+
+        if (!loading)
+        {
+            journal.recordRemove(portal);
+        }
     }
 
     /***
@@ -330,7 +564,7 @@ public class NetworkManager
      */
     public void removePortal(WorldCoordinates w)
     {
-        removePortal(getPortalIdentifier(w), w);
+        removePortal(getPortalAddress(w), w);
     }
 
     /***
@@ -338,33 +572,147 @@ public class NetworkManager
      */
     public void removePortalFromNetwork(GlyphIdentifier portal, GlyphIdentifier network)
     {
-        if (portal == null || network == null)
+        removePortalFromNetwork(GlyphAddress.fromIdentifier(portal), GlyphAddress.fromIdentifier(network));
+    }
+
+    /***
+     * Removes a portal from a network
+     */
+    public synchronized void removePortalFromNetwork(long portal, long network)
+    {
+        if (portal == GlyphAddress.NONE || network == GlyphAddress.NONE)
         {
             return;
         }
 
-        getNetwork(network).remove(portal.getGlyphString());
-        portalNetworks.remove(portal.getGlyphString());
+        NetworkRing ring = networkedPortals.get(network);
+
+        if (ring != null && ring.contains(portal))
+        {
+            ring = getNetwork(network);
+            ring.remove(portal);
+
+            if (ring.isEmpty())
+            {
+                networkedPortals.remove(network);
+            }
+        }
+
+        view = null;
+        unshareNetworks();
+
+        if (portalNetworks.remove(portal) != null && !loading)
+        {
+            journal.recordLeave(portal, network);
+        }
     }
 
-    public void saveAllData()
+    /***
+     * Renames the JSON files once a snapshot holding everything in them has been written, so they're never loaded over it again. Called from the {@link RegistryWriter} thread.
+     */
+    void retireLegacyFiles() throws IOException
     {
-        makeFiles();
+        for (File file : new File[] { portalFile, networkFile })
+        {
+            if (file.exists())
+            {
+                RegistryWriter.publish(file, new File(file.getParentFile(), file.getName() + ".migrated"));
+            }
+        }
 
-        try
+        migrating = false;
+    }
+
+    /***
+     * Hands any changes since the last save to the {@link RegistryWriter}, to be appended to the journal. Once the journal outgrows the registry, a snapshot is written instead. Does nothing if there haven't been any changes, so it's cheap to call once per dimension on every world save.
+     */
+    public synchronized void saveAllData()
+    {
+        if (snapshotRequired || journal.shouldCompact(portalCoordinates.size()))
+        {
+            submitSnapshot();
+        }
+        else if (journal.hasPendingRecords())
+        {
+            final byte[] records = journal.takePending();
+
+            writer.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        journal.append(records);
+                    }
+                    catch (IOException e)
+                    {
+                        EnhancedPortals.logger.catching(e);
+                        snapshotRequired = true;
+                    }
+                }
+            });
+        }
+    }
+
+    /***
+     * Saves any outstanding changes and waits for the {@link RegistryWriter} to finish. Called when the server stops.
+     */
+    public void shutdown()
+    {
+        saveAllData();
+        writer.close();
+    }
+
+    /***
+     * Copies the registry, then has the {@link RegistryWriter} write it out as the new snapshot and delete the journal it replaces.
+     */
+    synchronized void submitSnapshot()
+    {
+        final RegistrySnapshot snapshot = new RegistrySnapshot(this);
+        snapshotRequired = false;
+        journal.reset();
+
+        writer.submit(new Runnable()
         {
-            Gson gson = new GsonBuilder().create();
-            FileWriter portalWriter = new FileWriter(portalFile), networkWriter = new FileWriter(networkFile);
+            @Override
+            public void run()
+            {
+                try
+                {
+                    snapshot.write(registryFile);
+                    journal.delete();
 
-            gson.toJson(portalCoordinates, portalWriter);
-            gson.toJson(portalNetworks, networkWriter);
+                    if (migrating)
+                    {
+                        retireLegacyFiles();
+                    }
+                }
+                catch (IOException e)
+                {
+                    EnhancedPortals.logger.catching(e);
+                    snapshotRequired = true;
+                }
+            }
+        });
+    }
 
-            portalWriter.close();
-            networkWriter.close();
+    void unshareCoordinates()
+    {
+        if (coordinatesShared)
+        {
+            portalCoordinates = new LongMap<WorldCoordinates>(portalCoordinates);
+            portalCoordinatesReverse = new HashMap<WorldCoordinates, Long>(portalCoordinatesReverse);
+            coordinatesShared = false;
         }
-        catch (Exception e)
+    }
+
+    void unshareNetworks()
+    {
+        if (networksShared)
         {
-            EnhancedPortals.logger.catching(e);
+            portalNetworks = new LongMap<Long>(portalNetworks);
+            networksShared = false;
         }
     }
 }
@@ -0,0 +1,153 @@
+package enhancedportals.portal;
+
+import enhancedportals.utility.LongMap;
+
+/***
+ * The portals in a network, in dialling order. A circular doubly linked list keyed by {@link GlyphAddress}, so finding the next portal, adding a portal and removing one are all constant time.
+ */
+public class NetworkRing
+{
+    static final int PREVIOUS = 0, NEXT = 1;
+
+    /*** Portal address to its {previous, next} neighbours ***/
+    LongMap<long[]> links;
+    long head = GlyphAddress.NONE;
+
+    public NetworkRing()
+    {
+        links = new LongMap<long[]>();
+    }
+
+    /***
+     * Creates a copy of the specified ring, which can be changed without affecting the original.
+     */
+    public NetworkRing(NetworkRing ring)
+    {
+        links = new LongMap<long[]>(ring.links);
+        head = ring.head;
+
+        for (long portal : links.keys())
+        {
+            links.put(portal, links.get(portal).clone());
+        }
+    }
+
+    /***
+     * Adds the portal to the end of the ring, just before the first portal.
+     */
+    public boolean add(long portal)
+    {
+        if (links.containsKey(portal))
+        {
+            return false;
+        }
+
+        if (head == GlyphAddress.NONE)
+        {
+            links.put(portal, new long[] { portal, portal });
+            head = portal;
+        }
+        else
+        {
+            long[] first = links.get(head);
+            long tail = first[PREVIOUS];
+
+            links.put(portal, new long[] { tail, head });
+            links.get(tail)[NEXT] = portal;
+            first[PREVIOUS] = portal;
+        }
+
+        return true;
+    }
+
+    public boolean contains(long portal)
+    {
+        return links.containsKey(portal);
+    }
+
+    /***
+     * @return The first portal in the ring, or {@link GlyphAddress#NONE} if it's empty.
+     */
+    public long first()
+    {
+        return head;
+    }
+
+    public boolean isEmpty()
+    {
+        return head == GlyphAddress.NONE;
+    }
+
+    /***
+     * @return The portal after the specified one, wrapping around to the first. Portals not in the ring get the first portal, like the old list lookup did.
+     */
+    public long next(long portal)
+    {
+        long[] link = links.get(portal);
+        return link == null ? head : link[NEXT];
+    }
+
+    /***
+     * @return The portal before the specified one, wrapping around to the last. Portals not in the ring get the last portal.
+     */
+    public long previous(long portal)
+    {
+        long[] link = links.get(portal);
+
+        if (link == null)
+        {
+            link = links.get(head);
+        }
+
+        return link == null ? GlyphAddress.NONE : link[PREVIOUS];
+    }
+
+    public boolean remove(long portal)
+    {
+        long[] link = links.remove(portal);
+
+        if (link == null)
+        {
+            return false;
+        }
+
+        if (link[NEXT] == portal) // Last one
+        {
+            head = GlyphAddress.NONE;
+        }
+        else
+        {
+            links.get(link[PREVIOUS])[NEXT] = link[NEXT];
+            links.get(link[NEXT])[PREVIOUS] = link[PREVIOUS];
+
+            if (head == portal)
+            {
+                head = link[NEXT];
+            }
+        }
+
+        return true;
+    }
+
+    public int size()
+    {
+        return links.size();
+    }
+
+    /***
+     * @return All portals in dialling order, starting with the first.
+     */
+    public long[] toArray()
+    {
+        long[] portals = new long[links.size()];
+        long portal = head;
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            portals[i] = portal;
+            portal = links.get(portal)[NEXT];
+        }
+
+        return portals;
+    }
+}
@@ -0,0 +1,146 @@
+package enhancedportals.portal;
+
+import java.util.HashMap;
+import java.util.List;
+
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.ChunkCoordinates;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.network.FMLNetworkEvent.ClientDisconnectionFromServerEvent;
+import enhancedportals.tileentity.TileController;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.PackedCoordinates;
+
+/***
+ * Maps portal blocks to the controller they belong to, grouped by chunk, so portal blocks don't need a tile entity each. Controllers add their portal blocks when they're configured or loaded, and remove them when they're deconstructed or unloaded. Kept separately for the client and for each server dimension, and dropped when that world unloads.
+ */
+public class PortalBlockIndex
+{
+    /*** Chunk, then portal block, to controller. All coordinates are {@link PackedCoordinates} ***/
+    static LongMap<LongMap<Long>> client = new LongMap<LongMap<Long>>();
+    static HashMap<Integer, LongMap<LongMap<Long>>> server = new HashMap<Integer, LongMap<LongMap<Long>>>();
+
+    /***
+     * Adds the portal blocks of the controller to the index, replacing any controller they were previously assigned to.
+     */
+    public static void add(World world, ChunkCoordinates controller, List<ChunkCoordinates> blocks)
+    {
+        LongMap<LongMap<Long>> chunks = getChunks(world, true);
+        long packedController = PackedCoordinates.pack(controller);
+
+        for (ChunkCoordinates c : blocks)
+        {
+            long key = ChunkCoordIntPair.chunkXZ2Int(c.posX >> 4, c.posZ >> 4);
+            LongMap<Long> chunk = chunks.get(key);
+
+            if (chunk == null)
+            {
+                chunk = new LongMap<Long>();
+                chunks.put(key, chunk);
+            }
+
+            chunk.put(PackedCoordinates.pack(c), packedController);
+        }
+    }
+
+    public static void clear()
+    {
+        client = new LongMap<LongMap<Long>>();
+        server.clear();
+    }
+
+    static LongMap<LongMap<Long>> getChunks(IBlockAccess blockAccess, boolean create)
+    {
+        if (!(blockAccess instanceof World) || ((World) blockAccess).isRemote)
+        {
+            return client; // Chunk caches are only used for rendering
+        }
+
+        int dimension = ((World) blockAccess).provider.dimensionId;
+        LongMap<LongMap<Long>> chunks = server.get(dimension);
+
+        if (chunks == null && create)
+        {
+            chunks = new LongMap<LongMap<Long>>();
+            server.put(dimension, chunks);
+        }
+
+        return chunks;
+    }
+
+    /***
+     * @return The controller of the portal block at the specified location, or null if it doesn't have one or the controller isn't loaded
+     */
+    public static TileController getPortalController(IBlockAccess blockAccess, int x, int y, int z)
+    {
+        LongMap<LongMap<Long>> chunks = getChunks(blockAccess, false);
+        LongMap<Long> chunk = chunks == null ? null : chunks.get(ChunkCoordIntPair.chunkXZ2Int(x >> 4, z >> 4));
+        Long controller = chunk == null ? null : chunk.get(PackedCoordinates.pack(x, y, z));
+
+        if (controller == null)
+        {
+            return null;
+        }
+
+        TileEntity tile = blockAccess.getTileEntity(PackedCoordinates.getX(controller), PackedCoordinates.getY(controller), PackedCoordinates.getZ(controller));
+        return tile instanceof TileController ? (TileController) tile : null;
+    }
+
+    /***
+     * Removes the portal blocks of the controller from the index. Blocks that have since been assigned to a different controller are left alone.
+     */
+    public static void remove(World world, ChunkCoordinates controller, List<ChunkCoordinates> blocks)
+    {
+        LongMap<LongMap<Long>> chunks = getChunks(world, false);
+        long packedController = PackedCoordinates.pack(controller);
+
+        if (chunks == null)
+        {
+            return;
+        }
+
+        for (ChunkCoordinates c : blocks)
+        {
+            long key = ChunkCoordIntPair.chunkXZ2Int(c.posX >> 4, c.posZ >> 4), block = PackedCoordinates.pack(c);
+            LongMap<Long> chunk = chunks.get(key);
+            Long current = chunk == null ? null : chunk.get(block);
+
+            if (current != null && current == packedController)
+            {
+                chunk.remove(block);
+
+                if (chunk.isEmpty())
+                {
+                    chunks.remove(key);
+                }
+            }
+        }
+    }
+
+    /***
+     * Drops the index of a world that's being unloaded. Its controllers don't remove their blocks one at a time as it goes.
+     */
+    public static void unload(World world)
+    {
+        if (world.isRemote)
+        {
+            client = new LongMap<LongMap<Long>>();
+        }
+        else
+        {
+            server.remove(world.provider.dimensionId);
+        }
+    }
+
+    /***
+     * Fired on the network thread, so the client index is replaced rather than cleared under the renderer.
+     */
+    @SubscribeEvent
+    public void clientDisconnected(ClientDisconnectionFromServerEvent event)
+    {
+        client = new LongMap<LongMap<Long>>();
+    }
+}
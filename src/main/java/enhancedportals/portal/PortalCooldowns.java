@@ -0,0 +1,182 @@
+package enhancedportals.portal;
+
+import java.util.HashMap;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.world.World;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent.Phase;
+import cpw.mods.fml.common.gameevent.TickEvent.WorldTickEvent;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.LongQueue;
+
+/***
+ * Entities on portal cooldown, by entity ID, kept in a timing wheel for each world. Touching a portal while cooling down only pushes the expiry back; the wheel slot isn't moved until the old expiry comes round, so an entity standing in a portal costs one lookup per collision and one re-slot per cooldown period. A restart that brings the expiry forward also puts the entity in the earlier slot, and the old slot skips it when it comes round.
+ */
+public class PortalCooldowns
+{
+    static class Cooldown
+    {
+        int duration, expires;
+
+        Cooldown(int duration, int expires)
+        {
+            this.duration = duration;
+            this.expires = expires;
+        }
+    }
+
+    /*** Must be longer than the longest cooldown ***/
+    static final int WHEEL_SIZE = 512;
+    static HashMap<Integer, PortalCooldowns> worlds = new HashMap<Integer, PortalCooldowns>();
+
+    public static void clear()
+    {
+        worlds.clear();
+    }
+
+    static PortalCooldowns get(Entity entity, boolean create)
+    {
+        int dimension = entity.worldObj.provider.dimensionId;
+        PortalCooldowns cooldowns = worlds.get(dimension);
+
+        if (cooldowns == null && create)
+        {
+            cooldowns = new PortalCooldowns();
+            worlds.put(dimension, cooldowns);
+        }
+
+        return cooldowns;
+    }
+
+    public static boolean isCoolingDown(Entity entity)
+    {
+        PortalCooldowns cooldowns = get(entity, false);
+        return cooldowns != null && cooldowns.entities.containsKey(entity.getEntityId());
+    }
+
+    /***
+     * Starts the entity's cooldown, or restarts it if it's already cooling down.
+     */
+    public static void start(Entity entity, int duration)
+    {
+        get(entity, true).start(entity.getEntityId(), Math.min(duration, WHEEL_SIZE - 1));
+    }
+
+    /***
+     * Restarts the entity's cooldown if it has one.
+     *
+     * @return True if the entity is cooling down
+     */
+    public static boolean touch(Entity entity)
+    {
+        PortalCooldowns cooldowns = get(entity, false);
+        return cooldowns != null && cooldowns.touch(entity.getEntityId());
+    }
+
+    /***
+     * Drops the cooldowns of a world that's being unloaded.
+     */
+    public static void unload(World world)
+    {
+        if (!world.isRemote)
+        {
+            worlds.remove(world.provider.dimensionId);
+        }
+    }
+
+    LongMap<Cooldown> entities = new LongMap<Cooldown>();
+    int tick;
+    LongQueue[] wheel = new LongQueue[WHEEL_SIZE];
+
+    void advance()
+    {
+        tick++;
+        LongQueue slot = wheel[tick & WHEEL_SIZE - 1];
+
+        if (slot == null)
+        {
+            return;
+        }
+
+        while (!slot.isEmpty())
+        {
+            long id = slot.remove();
+            Cooldown cooldown = entities.get(id);
+
+            if (cooldown == null)
+            {
+                continue;
+            }
+            else if (cooldown.expires - tick <= 0)
+            {
+                entities.remove(id);
+            }
+            else
+            {
+                schedule(id, cooldown.expires);
+            }
+        }
+    }
+
+    void schedule(long id, int expires)
+    {
+        int index = expires & WHEEL_SIZE - 1;
+
+        if (wheel[index] == null)
+        {
+            wheel[index] = new LongQueue();
+        }
+
+        wheel[index].add(id);
+    }
+
+    void start(long id, int duration)
+    {
+        Cooldown cooldown = entities.get(id);
+
+        if (cooldown != null)
+        {
+            if (tick + duration - cooldown.expires < 0) // Sooner than the slot it's in
+            {
+                schedule(id, tick + duration);
+            }
+
+            cooldown.duration = duration;
+            cooldown.expires = tick + duration;
+            return;
+        }
+
+        entities.put(id, new Cooldown(duration, tick + duration));
+        schedule(id, tick + duration);
+    }
+
+    boolean touch(long id)
+    {
+        Cooldown cooldown = entities.get(id);
+
+        if (cooldown == null)
+        {
+            return false;
+        }
+
+        cooldown.expires = tick + cooldown.duration;
+        return true;
+    }
+
+    @SubscribeEvent
+    public void worldTick(WorldTickEvent event)
+    {
+        if (event.phase != Phase.END || event.world.isRemote)
+        {
+            return;
+        }
+
+        PortalCooldowns cooldowns = worlds.get(event.world.provider.dimensionId);
+
+        if (cooldowns != null)
+        {
+            cooldowns.advance();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package enhancedportals.portal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import net.minecraft.world.ChunkCoordIntPair;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Spatial index of registered portals, grouped by dimension and then by chunk. Kept up to date by {@link NetworkManager#addPortal} and {@link NetworkManager#removePortal}, so nearby portals can be found without walking every registered one.
+ */
+public class PortalIndex
+{
+    static class Dimension
+    {
+        /*** Packed chunk coordinates, then portal address to location ***/
+        LongMap<LongMap<WorldCoordinates>> chunks = new LongMap<LongMap<WorldCoordinates>>();
+        int size;
+    }
+
+    static long chunkKey(int chunkX, int chunkZ)
+    {
+        return ChunkCoordIntPair.chunkXZ2Int(chunkX, chunkZ);
+    }
+
+    static long distanceSq(WorldCoordinates a, WorldCoordinates b)
+    {
+        long x = a.posX - b.posX, y = a.posY - b.posY, z = a.posZ - b.posZ;
+        return x * x + y * y + z * z;
+    }
+
+    HashMap<Integer, Dimension> dimensions;
+
+    public PortalIndex()
+    {
+        dimensions = new HashMap<Integer, Dimension>();
+    }
+
+    public void add(long portal, WorldCoordinates w)
+    {
+        Dimension dimension = dimensions.get(w.dimension);
+
+        if (dimension == null)
+        {
+            dimension = new Dimension();
+            dimensions.put(w.dimension, dimension);
+        }
+
+        long key = chunkKey(w.posX >> 4, w.posZ >> 4);
+        LongMap<WorldCoordinates> chunk = dimension.chunks.get(key);
+
+        if (chunk == null)
+        {
+            chunk = new LongMap<WorldCoordinates>(1);
+            dimension.chunks.put(key, chunk);
+        }
+
+        if (chunk.put(portal, w) == null)
+        {
+            dimension.size++;
+        }
+    }
+
+    ArrayList<LongMap<WorldCoordinates>> chunksInRange(Dimension dimension, int minX, int maxX, int minZ, int maxZ)
+    {
+        ArrayList<LongMap<WorldCoordinates>> result = new ArrayList<LongMap<WorldCoordinates>>();
+
+        for (int x = minX; x <= maxX; x++)
+        {
+            for (int z = minZ; z <= maxZ; z++)
+            {
+                LongMap<WorldCoordinates> chunk = dimension.chunks.get(chunkKey(x, z));
+
+                if (chunk != null)
+                {
+                    result.add(chunk);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public void clear()
+    {
+        dimensions.clear();
+    }
+
+    /***
+     * @return The address of the portal closest to the specified location in the same dimension, or {@link GlyphAddress#NONE} if there isn't one. Searches outwards one ring of chunks at a time, stopping as soon as no further ring can hold anything closer.
+     */
+    public long getNearest(WorldCoordinates w)
+    {
+        Dimension dimension = dimensions.get(w.dimension);
+
+        if (dimension == null)
+        {
+            return GlyphAddress.NONE;
+        }
+
+        int centreX = w.posX >> 4, centreZ = w.posZ >> 4;
+        long[] nearest = { GlyphAddress.NONE, Long.MAX_VALUE };
+
+        for (int ring = 0;; ring++)
+        {
+            if (ring * 8 > dimension.chunks.size())
+            {
+                // The ring has more chunks than the dimension has occupied ones, so checking those is cheaper
+                for (LongMap<WorldCoordinates> chunk : dimension.chunks.values())
+                {
+                    nearest(chunk, w, nearest);
+                }
+
+                break;
+            }
+
+            for (int x = centreX - ring; x <= centreX + ring; x++)
+            {
+                boolean edge = x == centreX - ring || x == centreX + ring;
+
+                for (int z = centreZ - ring; z <= centreZ + ring; z += edge ? 1 : ring * 2)
+                {
+                    LongMap<WorldCoordinates> chunk = dimension.chunks.get(chunkKey(x, z));
+
+                    if (chunk != null)
+                    {
+                        nearest(chunk, w, nearest);
+                    }
+                }
+            }
+
+            // Anything in the next ring is more than ring * 16 blocks away
+            long reach = ring * 16L;
+
+            if (nearest[0] != GlyphAddress.NONE && nearest[1] <= reach * reach)
+            {
+                break;
+            }
+        }
+
+        return nearest[0];
+    }
+
+    /***
+     * @return The addresses of all portals in the specified chunk
+     */
+    public long[] getPortalsInChunk(int dim, int chunkX, int chunkZ)
+    {
+        Dimension dimension = dimensions.get(dim);
+        LongMap<WorldCoordinates> chunk = dimension == null ? null : dimension.chunks.get(chunkKey(chunkX, chunkZ));
+        return chunk == null ? new long[0] : chunk.keys();
+    }
+
+    /***
+     * @return The addresses of all portals within the specified distance of a location, in the same dimension
+     */
+    public long[] getPortalsInRadius(WorldCoordinates w, int radius)
+    {
+        Dimension dimension = dimensions.get(w.dimension);
+
+        if (dimension == null || radius < 0)
+        {
+            return new long[0];
+        }
+
+        long radiusSq = (long) radius * radius;
+        long[] found = new long[8];
+        int count = 0;
+        int minX = w.posX - radius >> 4, maxX = w.posX + radius >> 4, minZ = w.posZ - radius >> 4, maxZ = w.posZ + radius >> 4;
+        boolean scanAll = (long) (maxX - minX + 1) * (maxZ - minZ + 1) > dimension.chunks.size();
+
+        for (LongMap<WorldCoordinates> chunk : scanAll ? dimension.chunks.values() : chunksInRange(dimension, minX, maxX, minZ, maxZ))
+        {
+            for (long portal : chunk.keys())
+            {
+                if (distanceSq(chunk.get(portal), w) <= radiusSq)
+                {
+                    if (count == found.length)
+                    {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+
+                    found[count++] = portal;
+                }
+            }
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    /***
+     * Updates nearest (address, squared distance) with the closest portal in the chunk.
+     */
+    void nearest(LongMap<WorldCoordinates> chunk, WorldCoordinates w, long[] nearest)
+    {
+        for (long portal : chunk.keys())
+        {
+            long distance = distanceSq(chunk.get(portal), w);
+
+            if (distance < nearest[1])
+            {
+                nearest[0] = portal;
+                nearest[1] = distance;
+            }
+        }
+    }
+
+    public void remove(long portal, WorldCoordinates w)
+    {
+        Dimension dimension = dimensions.get(w.dimension);
+
+        if (dimension == null)
+        {
+            return;
+        }
+
+        long key = chunkKey(w.posX >> 4, w.posZ >> 4);
+        LongMap<WorldCoordinates> chunk = dimension.chunks.get(key);
+
+        if (chunk == null || chunk.remove(portal) == null)
+        {
+            return;
+        }
+
+        if (chunk.isEmpty())
+        {
+            dimension.chunks.remove(key);
+        }
+
+        if (--dimension.size == 0)
+        {
+            dimensions.remove(w.dimension);
+        }
+    }
+
+    public int size(int dim)
+    {
+        Dimension dimension = dimensions.get(dim);
+        return dimension == null ? 0 : dimension.size;
+    }
+}
@@ -1,8 +1,7 @@
 package enhancedportals.portal;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.HashMap;
 
 import net.minecraft.block.Block;
 import net.minecraft.init.Blocks;
@@ -10,58 +9,95 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.ChunkCoordinates;
 import net.minecraft.world.World;
 import net.minecraftforge.common.util.ForgeDirection;
+import enhancedportals.block.BlockPortal;
 import enhancedportals.tileentity.TileController;
 import enhancedportals.tileentity.TileDiallingDevice;
 import enhancedportals.tileentity.TileModuleManipulator;
 import enhancedportals.tileentity.TileNetworkInterface;
 import enhancedportals.tileentity.TilePortalPart;
 import enhancedportals.tileentity.TileProgrammableInterface;
+import enhancedportals.utility.BulkBlockWriter;
 import enhancedportals.utility.GeneralUtils;
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.LongQueue;
+import enhancedportals.utility.LongSet;
+import enhancedportals.utility.PackedCoordinates;
 
 public class PortalUtils
 {
-    static final int MAXIMUM_CHANCES = 10;
-
     /***
-     * Adds all the touching blocks to the processing queue.
+     * The result of a failed portal detection. Kept by the controller so repeated attempts don't repeat the search, until a portal frame changes or one of the blocks that stopped it does.
      */
-    static void addNearbyBlocks(World world, ChunkCoordinates w, int portalDirection, Queue<ChunkCoordinates> q)
+    public static class Detection
     {
-        if (portalDirection == 4)
-        {
-            q.add(new ChunkCoordinates(w.posX, w.posY + 1, w.posZ)); // Up
-            q.add(new ChunkCoordinates(w.posX, w.posY - 1, w.posZ)); // Down
+        int generation;
 
-            q.add(new ChunkCoordinates(w.posX + 1, w.posY, w.posZ - 1)); // North East
-            q.add(new ChunkCoordinates(w.posX - 1, w.posY, w.posZ + 1)); // South West
-        }
-        else if (portalDirection == 5)
-        {
-            q.add(new ChunkCoordinates(w.posX, w.posY + 1, w.posZ)); // Up
-            q.add(new ChunkCoordinates(w.posX, w.posY - 1, w.posZ)); // Down
+        /*** Blocks that made a portal shape impossible, and what they were at the time ***/
+        LongMap<Block> obstructions = new LongMap<Block>();
 
-            q.add(new ChunkCoordinates(w.posX - 1, w.posY, w.posZ - 1)); // North West
-            q.add(new ChunkCoordinates(w.posX + 1, w.posY, w.posZ + 1)); // South East
+        Detection(World world)
+        {
+            generation = getFrameGeneration(world);
         }
-        else
+
+        public boolean isValid(World world)
         {
-            for (int i = 0; i < 6; i++)
+            if (generation != getFrameGeneration(world))
             {
-                if (portalDirection == 1 && (i == 2 || i == 3))
-                {
-                    continue;
-                }
-                else if (portalDirection == 2 && (i == 4 || i == 5))
-                {
-                    continue;
-                }
-                else if (portalDirection == 3 && (i == 0 || i == 1))
+                return false;
+            }
+
+            for (long c : obstructions.keys())
+            {
+                if (world.getBlock(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c)) != obstructions.get(c))
                 {
-                    continue;
+                    return false;
                 }
+            }
+
+            return true;
+        }
+    }
+
+    static final int MAXIMUM_CHANCES = 10;
+
+    /*** How far {@link #isClosed} walks along an axis before leaving the shape to the flood fill ***/
+    static final int MAXIMUM_SPAN = 64;
+
+    /*** The most portal blocks a single portal can have. Detection gives up once it's gone past this many ***/
+    static final int MAXIMUM_BLOCKS = 64 * 64;
+
+    /*** The axes a portal can lie along: Y, X, Z, and the two diagonals ***/
+    static final int[][] AXES = { { 0, 1, 0 }, { 1, 0, 0 }, { 0, 0, 1 }, { 1, 0, -1 }, { 1, 0, 1 } };
+
+    /*** The two {@link #AXES} that make up the plane of each portal type ***/
+    static final int[][] PLANE_AXES = { {}, { 0, 1 }, { 0, 2 }, { 1, 2 }, { 0, 3 }, { 0, 4 } };
+
+    /*** Bumped, by dimension, whenever a portal frame is placed, broken or sees a neighbour change. Invalidates every {@link Detection} remembered in that dimension ***/
+    static HashMap<Integer, Integer> frameGenerations = new HashMap<Integer, Integer>();
+
+    /***
+     * Offsets of the touching blocks for each portal type, in the order they're queued. Type 0 is every direction.
+     */
+    static final int[][][] NEIGHBOURS = { { { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 }, { -1, 0, 0 }, { 1, 0, 0 } }, // All
+            { { 0, -1, 0 }, { 0, 1, 0 }, { -1, 0, 0 }, { 1, 0, 0 } }, // X
+            { { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 } }, // Z
+            { { 0, 0, -1 }, { 0, 0, 1 }, { -1, 0, 0 }, { 1, 0, 0 } }, // Flat
+            { { 0, 1, 0 }, { 0, -1, 0 }, { 1, 0, -1 }, { -1, 0, 1 } }, // North East, South West
+            { { 0, 1, 0 }, { 0, -1, 0 }, { -1, 0, -1 }, { 1, 0, 1 } } }; // North West, South East
+
+    /***
+     * Adds all the touching blocks that haven't been seen yet to the processing queue.
+     */
+    static void addNearbyBlocks(long c, int portalDirection, LongSet seen, LongQueue q)
+    {
+        for (int[] offset : NEIGHBOURS[portalDirection])
+        {
+            long neighbour = PackedCoordinates.offset(c, offset[0], offset[1], offset[2]);
 
-                ForgeDirection d = ForgeDirection.getOrientation(i);
-                q.add(new ChunkCoordinates(w.posX + d.offsetX, w.posY + d.offsetY, w.posZ + d.offsetZ));
+            if (seen.add(neighbour))
+            {
+                q.add(neighbour);
             }
         }
     }
@@ -69,9 +105,12 @@ public class PortalUtils
     public static ArrayList<ChunkCoordinates> getAllPortalComponents(TileController controller) throws PortalException
     {
         ArrayList<ChunkCoordinates> portalComponents = new ArrayList<ChunkCoordinates>();
-        Queue<ChunkCoordinates> toProcess = new LinkedList<ChunkCoordinates>();
-        Queue<ChunkCoordinates> portalBlocks = getGhostedPortalBlocks(controller);
-        toProcess.add(controller.getChunkCoordinates());
+        LongSet portalBlocks = getGhostedPortalBlocks(controller), seen = new LongSet(portalBlocks.size() * 2);
+        LongQueue toProcess = new LongQueue();
+        World world = controller.getWorldObj();
+        long start = PackedCoordinates.pack(controller.getChunkCoordinates());
+        seen.add(start);
+        toProcess.add(start);
 
         if (portalBlocks.isEmpty())
         {
@@ -82,63 +121,64 @@ public class PortalUtils
 
         while (!toProcess.isEmpty())
         {
-            ChunkCoordinates c = toProcess.remove();
+            long c = toProcess.remove();
+            TileEntity t = world.getTileEntity(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c));
 
-            if (!portalComponents.contains(c))
+            if (portalBlocks.contains(c) || t instanceof TilePortalPart || world.getBlock(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c)) == BlockPortal.instance)
             {
-                TileEntity t = controller.getWorldObj().getTileEntity(c.posX, c.posY, c.posZ);
+                if (t instanceof TileNetworkInterface)
+                {
+                    if (dialler)
+                    {
+                        throw new PortalException("dialAndNetwork");
+                    }
 
-                if (portalBlocks.contains(c) || t instanceof TilePortalPart)
+                    network = true;
+                }
+                else if (t instanceof TileDiallingDevice)
                 {
-                    if (t instanceof TileNetworkInterface)
+                    if (network)
                     {
-                        if (dialler)
-                        {
-                            throw new PortalException("dialAndNetwork");
-                        }
+                        throw new PortalException("dialAndNetwork");
+                    }
 
-                        network = true;
+                    dialler = true;
+                }
+
+                else if (t instanceof TileProgrammableInterface)
+                {
+                    if (!program)
+                    {
+                        program = true;
                     }
-                    else if (t instanceof TileDiallingDevice)
+                    else
                     {
-                        if (network)
-                        {
-                            throw new PortalException("dialAndNetwork");
-                        }
-
-                        dialler = true;
+                        throw new PortalException("multipleProgram");
                     }
-
-                    else if (t instanceof TileProgrammableInterface)
+                }
+                else if (t instanceof TileModuleManipulator)
+                {
+                    if (!mod)
                     {
-                        if (!program)
-                        {
-                            program = true;
-                        }
-                        else
-                        {
-                            throw new PortalException("multipleProgram");
-                        }
+                        mod = true;
                     }
-                    else if (t instanceof TileModuleManipulator)
+                    else
                     {
-                        if (!mod)
-                        {
-                            mod = true;
-                        }
-                        else
-                        {
-                            throw new PortalException("multipleMod");
-                        }
+                        throw new PortalException("multipleMod");
                     }
+                }
 
-                    portalComponents.add(c);
-                    addNearbyBlocks(controller.getWorldObj(), c, 0, toProcess);
+                if (portalComponents.size() >= MAXIMUM_BLOCKS * 2) // Portal blocks plus a frame around them
+                {
+                    throw new PortalException("couldNotCreatePortalHere");
+                }
 
-                    if (controller.portalType >= 4)
-                    {
-                        addNearbyBlocks(controller.getWorldObj(), c, controller.portalType, toProcess); // Adds diagonals for those that require it
-                    }
+                portalComponents.add(PackedCoordinates.unpack(c));
+                addNearbyBlocks(c, 0, seen, toProcess);
+
+                if (controller.portalType >= 4)
+                {
+                    addNearbyBlocks(c, controller.portalType, seen, toProcess); // Adds diagonals for those that require it
                 }
             }
         }
@@ -151,81 +191,126 @@ public class PortalUtils
         return portalComponents;
     }
 
-    static Queue<ChunkCoordinates> getGhostedPortalBlocks(TileController controller)
+    static int getFrameGeneration(World world)
     {
+        Integer generation = frameGenerations.get(world.provider.dimensionId);
+        return generation == null ? 0 : generation;
+    }
+
+    /***
+     * Finds the portal blocks around the controller, and sets its portal type. Only flood fills the types {@link #getPossibleTypes} allows, and remembers failures in the controller's {@link Detection}.
+     */
+    static LongSet getGhostedPortalBlocks(TileController controller)
+    {
+        World world = controller.getWorldObj();
+
+        if (controller.portalDetection != null && controller.portalDetection.isValid(world))
+        {
+            return new LongSet(); // Nothing's changed since it last failed
+        }
+
+        Detection detection = new Detection(world);
+
         for (int j = 0; j < 6; j++)
         {
+            long start = PackedCoordinates.pack(GeneralUtils.offset(controller.getChunkCoordinates(), ForgeDirection.getOrientation(j)));
+
+            if (!world.isAirBlock(PackedCoordinates.getX(start), PackedCoordinates.getY(start), PackedCoordinates.getZ(start)))
+            {
+                continue;
+            }
+
+            int types = getPossibleTypes(world, start, detection.obstructions);
+
             for (int i = 1; i < 6; i++)
             {
-                ChunkCoordinates c = GeneralUtils.offset(controller.getChunkCoordinates(), ForgeDirection.getOrientation(j));
-                Queue<ChunkCoordinates> portalBlocks = getGhostedPortalBlocks(controller.getWorldObj(), c, i);
+                if ((types & 1 << i) == 0)
+                {
+                    continue;
+                }
+
+                LongSet portalBlocks = getGhostedPortalBlocks(world, start, i, detection.obstructions);
 
                 if (!portalBlocks.isEmpty())
                 {
                     controller.portalType = i;
+                    controller.portalDetection = null;
                     return portalBlocks;
                 }
             }
         }
 
-        return new LinkedList<ChunkCoordinates>();
+        controller.portalDetection = detection;
+        return new LongSet();
     }
 
-    static Queue<ChunkCoordinates> getGhostedPortalBlocks(World world, ChunkCoordinates start, int portalType)
+    /***
+     * Flood fills the air around the start block, in the plane of the portal type.
+     * 
+     * @return The portal blocks, or an empty set if the air isn't enclosed by portal parts. The block the fill stopped at is added to the obstructions.
+     */
+    static LongSet getGhostedPortalBlocks(World world, long start, int portalType, LongMap<Block> obstructions)
     {
-        Queue<ChunkCoordinates> portalBlocks = new LinkedList<ChunkCoordinates>();
-        Queue<ChunkCoordinates> toProcess = new LinkedList<ChunkCoordinates>();
+        LongSet portalBlocks = new LongSet(), seen = new LongSet();
+        LongQueue toProcess = new LongQueue();
         int chances = 0;
+        seen.add(start);
         toProcess.add(start);
 
         while (!toProcess.isEmpty())
         {
-            ChunkCoordinates c = toProcess.remove();
+            long c = toProcess.remove();
+            int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
 
-            if (!portalBlocks.contains(c))
+            if (world.isAirBlock(x, y, z))
             {
-                if (world.isAirBlock(c.posX, c.posY, c.posZ))
-                {
-                    int sides = getGhostedSides(world, c, portalBlocks, portalType);
+                int sides = getGhostedSides(world, c, portalBlocks, portalType);
 
-                    if (sides < 2)
+                if (sides < 2)
+                {
+                    if (chances < MAXIMUM_CHANCES)
                     {
-                        if (chances < MAXIMUM_CHANCES)
-                        {
-                            chances++;
-                            sides += 2;
-                        }
-                        else
-                        {
-                            return new LinkedList<ChunkCoordinates>();
-                        }
+                        chances++;
+                        sides += 2;
                     }
-
-                    if (sides >= 2)
+                    else
                     {
-                        portalBlocks.add(c);
-                        addNearbyBlocks(world, c, portalType, toProcess);
+                        obstructions.put(c, world.getBlock(x, y, z));
+                        return new LongSet();
                     }
                 }
-                else if (!isPortalPart(world, c))
+
+                if (sides >= 2)
                 {
-                    return new LinkedList<ChunkCoordinates>();
+                    if (portalBlocks.size() >= MAXIMUM_BLOCKS)
+                    {
+                        obstructions.put(c, world.getBlock(x, y, z));
+                        return new LongSet();
+                    }
+
+                    portalBlocks.add(c);
+                    addNearbyBlocks(c, portalType, seen, toProcess);
                 }
             }
+            else if (!isPortalPart(world, x, y, z))
+            {
+                obstructions.put(c, world.getBlock(x, y, z));
+                return new LongSet();
+            }
         }
 
         return portalBlocks;
     }
 
-    static int getGhostedSides(World world, ChunkCoordinates block, Queue<ChunkCoordinates> portalBlocks, int portalType)
+    static int getGhostedSides(World world, long block, LongSet portalBlocks, int portalType)
     {
         int sides = 0;
-        Queue<ChunkCoordinates> neighbors = new LinkedList<ChunkCoordinates>();
-        addNearbyBlocks(world, block, portalType, neighbors);
 
-        for (ChunkCoordinates c : neighbors)
+        for (int[] offset : NEIGHBOURS[portalType])
         {
-            if (portalBlocks.contains(c) || isPortalPart(world, c))
+            long c = PackedCoordinates.offset(block, offset[0], offset[1], offset[2]);
+
+            if (portalBlocks.contains(c) || isPortalPart(world, PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c)))
             {
                 sides++;
             }
@@ -234,70 +319,134 @@ public class PortalUtils
         return sides;
     }
 
-    static boolean isPortalPart(World world, ChunkCoordinates c)
+    /***
+     * Works out which portal types could fit around the start block, by walking along each axis until it reaches a portal part. A type is only possible if neither of its axes runs into anything else at either end, so only those need flood filling.
+     * 
+     * @return A bit for each possible portal type
+     */
+    static int getPossibleTypes(World world, long start, LongMap<Block> obstructions)
     {
-        TileEntity tile = world.getTileEntity(c.posX, c.posY, c.posZ);
-        return tile != null && tile instanceof TilePortalPart;
+        int closedAxes = 0, types = 0;
+
+        for (int axis = 0; axis < AXES.length; axis++)
+        {
+            if (isClosed(world, start, AXES[axis], 1, obstructions) && isClosed(world, start, AXES[axis], -1, obstructions))
+            {
+                closedAxes |= 1 << axis;
+            }
+        }
+
+        for (int type = 1; type < PLANE_AXES.length; type++)
+        {
+            if ((closedAxes & 1 << PLANE_AXES[type][0]) != 0 && (closedAxes & 1 << PLANE_AXES[type][1]) != 0)
+            {
+                types |= 1 << type;
+            }
+        }
+
+        return types;
+    }
+
+    /***
+     * Walks from the start block along the axis, in the specified direction, through air.
+     * 
+     * @return False if it reaches a block that isn't a portal part. A walk that's still in air after {@link #MAXIMUM_SPAN} blocks returns true, and the flood fill decides.
+     */
+    static boolean isClosed(World world, long start, int[] axis, int direction, LongMap<Block> obstructions)
+    {
+        int x = PackedCoordinates.getX(start), y = PackedCoordinates.getY(start), z = PackedCoordinates.getZ(start);
+
+        for (int i = 0; i < MAXIMUM_SPAN; i++)
+        {
+            x += axis[0] * direction;
+            y += axis[1] * direction;
+            z += axis[2] * direction;
+
+            if (!world.isAirBlock(x, y, z))
+            {
+                if (isPortalPart(world, x, y, z))
+                {
+                    return true;
+                }
+
+                obstructions.put(PackedCoordinates.pack(x, y, z), world.getBlock(x, y, z));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static boolean isPortalPart(World world, int x, int y, int z)
+    {
+        TileEntity tile = world.getTileEntity(x, y, z);
+        return tile instanceof TilePortalPart || world.getBlock(x, y, z) == BlockPortal.instance;
     }
 
     public static boolean netherCreatePortal(World world, ChunkCoordinates w, int portalDirection)
     {
-        Queue<ChunkCoordinates> processed = new LinkedList<ChunkCoordinates>();
-        Queue<ChunkCoordinates> toProcess = new LinkedList<ChunkCoordinates>();
+        LongSet processed = new LongSet(), seen = new LongSet();
+        LongQueue toProcess = new LongQueue();
+        BulkBlockWriter writer = new BulkBlockWriter(world);
         int chances = 0;
-        toProcess.add(w);
+        long start = PackedCoordinates.pack(w);
+        seen.add(start);
+        toProcess.add(start);
 
         while (!toProcess.isEmpty())
         {
-            ChunkCoordinates c = toProcess.remove();
+            long c = toProcess.remove();
+            int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
 
-            if (!processed.contains(c))
+            if (world.isAirBlock(x, y, z))
             {
-                if (world.isAirBlock(c.posX, c.posY, c.posZ))
-                {
-                    int sides = netherGetSides(world, c, portalDirection);
+                int sides = netherGetSides(world, c, portalDirection);
 
-                    if (sides < 2)
+                if (sides < 2)
+                {
+                    if (chances < MAXIMUM_CHANCES)
                     {
-                        if (chances < MAXIMUM_CHANCES)
-                        {
-                            chances++;
-                            sides += 2;
-                        }
-                        else
-                        {
-                            netherRemoveFailedPortal(world, processed);
-                            return false;
-                        }
+                        chances++;
+                        sides += 2;
                     }
-
-                    if (sides >= 2)
+                    else
                     {
-                        processed.add(c);
-                        world.setBlock(c.posX, c.posY, c.posZ, Blocks.portal, 0, 2);
-                        addNearbyBlocks(world, c, portalDirection, toProcess);
+                        netherRemoveFailedPortal(writer, processed);
+                        return false;
                     }
                 }
-                else if (!netherIsPortalPart(world, c.posX, c.posY, c.posZ))
+
+                if (sides >= 2)
                 {
-                    netherRemoveFailedPortal(world, processed);
-                    return false;
+                    if (processed.size() >= MAXIMUM_BLOCKS)
+                    {
+                        netherRemoveFailedPortal(writer, processed);
+                        return false;
+                    }
+
+                    processed.add(c);
+                    writer.setBlock(x, y, z, Blocks.portal, 0);
+                    addNearbyBlocks(c, portalDirection, seen, toProcess);
                 }
             }
+            else if (!netherIsPortalPart(world, x, y, z))
+            {
+                netherRemoveFailedPortal(writer, processed);
+                return false;
+            }
         }
 
+        writer.finish(false);
         return true;
     }
 
-    static int netherGetSides(World world, ChunkCoordinates w, int portalDirection)
+    static int netherGetSides(World world, long w, int portalDirection)
     {
         int sides = 0;
-        Queue<ChunkCoordinates> neighbors = new LinkedList<ChunkCoordinates>();
-        addNearbyBlocks(world, w, portalDirection, neighbors);
 
-        for (ChunkCoordinates c : neighbors)
+        for (int[] offset : NEIGHBOURS[portalDirection])
         {
-            if (netherIsPortalPart(world, c.posX, c.posY, c.posZ))
+            if (netherIsPortalPart(world, PackedCoordinates.getX(w) + offset[0], PackedCoordinates.getY(w) + offset[1], PackedCoordinates.getZ(w) + offset[2]))
             {
                 sides++;
             }
@@ -316,12 +465,21 @@ public class PortalUtils
         return netherIsPortalPart(world.getBlock(x, y, z));
     }
 
-    static void netherRemoveFailedPortal(World world, Queue<ChunkCoordinates> processed)
+    static void netherRemoveFailedPortal(BulkBlockWriter writer, LongSet processed)
     {
-        while (!processed.isEmpty())
+        for (long c : processed.toArray())
         {
-            ChunkCoordinates c = processed.remove();
-            world.setBlockToAir(c.posX, c.posY, c.posZ);
+            writer.setBlockToAir(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c));
         }
+
+        writer.finish(true);
+    }
+
+    /***
+     * Called by portal frames when they're placed, broken, or a block next to them changes.
+     */
+    public static void onFrameChanged(World world)
+    {
+        frameGenerations.put(world.provider.dimensionId, getFrameGeneration(world) + 1);
     }
 }
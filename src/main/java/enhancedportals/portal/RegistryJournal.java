@@ -0,0 +1,222 @@
+package enhancedportals.portal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import enhancedportals.EnhancedPortals;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Append-only log of changes made to the {@link NetworkManager} since the last full snapshot. Changes are buffered in memory on the server thread and appended to disk by the {@link RegistryWriter} on save, so saving only costs as much as the changes made since the previous save.
+ */
+public class RegistryJournal
+{
+    static final byte ADD = 0, REMOVE = 1, JOIN = 2, LEAVE = 3;
+
+    /*** Minimum number of records on disk before the journal is folded back into a snapshot ***/
+    static final int COMPACT_THRESHOLD = 1024;
+
+    File file;
+    ByteArrayOutputStream pendingBytes;
+    DataOutputStream pending;
+    int pendingRecords, journalRecords;
+
+    public RegistryJournal(File f)
+    {
+        file = f;
+        pendingBytes = new ByteArrayOutputStream();
+        pending = new DataOutputStream(pendingBytes);
+    }
+
+    /***
+     * Appends records taken with {@link #takePending()} to the journal file. Called from the {@link RegistryWriter} thread.
+     */
+    public void append(byte[] records) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file, true);
+
+        try
+        {
+            out.write(records);
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /***
+     * Deletes the journal file. Called from the {@link RegistryWriter} thread, once a snapshot containing all its records has been published.
+     */
+    public void delete()
+    {
+        if (file.exists() && !file.delete())
+        {
+            EnhancedPortals.logger.warn("Could not delete " + file.getName());
+        }
+    }
+
+    public boolean hasPendingRecords()
+    {
+        return pendingRecords > 0;
+    }
+
+    /***
+     * @return True if the journal file has any contents, including a partially written record.
+     */
+    public boolean hasRecordsOnDisk()
+    {
+        return file.exists() && file.length() > 0;
+    }
+
+    void record(byte type, long portal, long network)
+    {
+        try
+        {
+            pending.writeByte(type);
+            pending.writeLong(portal);
+            pending.writeLong(network);
+            pendingRecords++;
+        }
+        catch (IOException e)
+        {
+            EnhancedPortals.logger.catching(e);
+        }
+    }
+
+    public void recordAdd(long portal, WorldCoordinates w)
+    {
+        try
+        {
+            pending.writeByte(ADD);
+            pending.writeLong(portal);
+            pending.writeInt(w.posX);
+            pending.writeInt(w.posY);
+            pending.writeInt(w.posZ);
+            pending.writeInt(w.dimension);
+            pendingRecords++;
+        }
+        catch (IOException e) // Can't happen, we're writing to memory
+        {
+            EnhancedPortals.logger.catching(e);
+        }
+    }
+
+    public void recordJoin(long portal, long network)
+    {
+        record(JOIN, portal, network);
+    }
+
+    public void recordLeave(long portal, long network)
+    {
+        record(LEAVE, portal, network);
+    }
+
+    public void recordRemove(long portal)
+    {
+        try
+        {
+            pending.writeByte(REMOVE);
+            pending.writeLong(portal);
+            pendingRecords++;
+        }
+        catch (IOException e)
+        {
+            EnhancedPortals.logger.catching(e);
+        }
+    }
+
+    /***
+     * Re-applies every record in the journal file to the specified manager. A record cut short by a crash ends the replay, everything before it is kept.
+     */
+    public void replay(NetworkManager manager) throws IOException
+    {
+        journalRecords = 0;
+
+        if (!file.exists())
+        {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try
+        {
+            while (true)
+            {
+                byte type = in.readByte();
+                long portal = in.readLong();
+
+                if (type == ADD)
+                {
+                    manager.addPortal(portal, new WorldCoordinates(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                }
+                else if (type == REMOVE)
+                {
+                    manager.removePortal(portal, manager.portalCoordinates.get(portal));
+                }
+                else if (type == JOIN)
+                {
+                    manager.addPortalToNetwork(portal, in.readLong());
+                }
+                else if (type == LEAVE)
+                {
+                    manager.removePortalFromNetwork(portal, in.readLong());
+                }
+                else
+                {
+                    EnhancedPortals.logger.warn("Unknown record in " + file.getName() + ", ignoring the rest of the journal");
+                    break;
+                }
+
+                journalRecords++;
+            }
+        }
+        catch (EOFException e)
+        {
+            // End of the journal, or a partially written record
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /***
+     * Forgets about all records, written or not. Used when a snapshot is taken, as it will contain all of them.
+     */
+    public void reset()
+    {
+        pendingBytes.reset();
+        pendingRecords = 0;
+        journalRecords = 0;
+    }
+
+    /***
+     * @return True if the journal has grown large enough, compared to the registry, that it should be replaced with a snapshot.
+     */
+    public boolean shouldCompact(int registrySize)
+    {
+        return journalRecords + pendingRecords > Math.max(COMPACT_THRESHOLD, registrySize);
+    }
+
+    /***
+     * Removes all buffered records so they can be appended by the {@link RegistryWriter}.
+     */
+    public byte[] takePending()
+    {
+        byte[] records = pendingBytes.toByteArray();
+        journalRecords += pendingRecords;
+        pendingBytes.reset();
+        pendingRecords = 0;
+        return records;
+    }
+}
@@ -0,0 +1,245 @@
+package enhancedportals.portal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Immutable copy of the {@link NetworkManager} registry. Taken on the server thread and serialized by the {@link RegistryWriter}, or read back from disk and applied to a manager when the world loads.
+ * <p>
+ * The binary format is a header (magic, version, portal count, network count), one fixed-width record per portal (address, x, y, z, dimension, network address), then an index section listing each network's members as record numbers, in rotation order.
+ */
+public class RegistrySnapshot
+{
+    static final int MAGIC = 0x45503352, VERSION = 1; // "EP3R"
+    static final int HEADER_SIZE = 16, RECORD_SIZE = 32;
+
+    /***
+     * Reads a binary snapshot. The file is read into memory in one go and closed before anything is parsed.
+     */
+    public static RegistrySnapshot load(File file) throws IOException
+    {
+        return read(ByteBuffer.wrap(FileUtils.readFileToByteArray(file)), file.getName());
+    }
+
+    /***
+     * Parses a snapshot written by {@link #toByteArray}. Every count and record number is checked against what's left in the buffer, so a damaged file fails here rather than partway through loading the registry.
+     *
+     * @throws IOException If the data isn't a complete, valid snapshot
+     */
+    static RegistrySnapshot read(ByteBuffer buffer, String name) throws IOException
+    {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+        {
+            throw new IOException(name + " is not a portal registry");
+        }
+
+        int version = buffer.getInt();
+
+        if (version != VERSION)
+        {
+            throw new IOException(name + " has unsupported version " + version);
+        }
+
+        int portalCount = buffer.getInt(), networkCount = buffer.getInt();
+
+        if (portalCount < 0 || networkCount < 0 || buffer.remaining() < portalCount * (long) RECORD_SIZE + networkCount * 12L)
+        {
+            throw new IOException(name + " is truncated");
+        }
+
+        long[] portals = new long[portalCount], portalNetworks = new long[portalCount], networks = new long[networkCount];
+        long[][] networkMembers = new long[networkCount][];
+        WorldCoordinates[] locations = new WorldCoordinates[portalCount];
+
+        for (int i = 0; i < portalCount; i++)
+        {
+            portals[i] = buffer.getLong();
+            locations[i] = new WorldCoordinates(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            portalNetworks[i] = buffer.getLong();
+
+            if (!GlyphAddress.isValid(portals[i]) || portalNetworks[i] != GlyphAddress.NONE && !GlyphAddress.isValid(portalNetworks[i]))
+            {
+                throw new IOException(name + " has an invalid address in record " + i);
+            }
+        }
+
+        for (int i = 0; i < networkCount; i++)
+        {
+            if (buffer.remaining() < 12)
+            {
+                throw new IOException(name + " is truncated");
+            }
+
+            networks[i] = buffer.getLong();
+            int members = buffer.getInt();
+
+            if (!GlyphAddress.isValid(networks[i]) || members < 0 || buffer.remaining() < members * 4L + (networkCount - i - 1) * 12L)
+            {
+                throw new IOException(name + " has a damaged index for network " + i);
+            }
+
+            long[] ring = new long[members];
+            int count = 0;
+
+            for (int j = 0; j < members; j++)
+            {
+                int record = buffer.getInt();
+
+                if (record < -1 || record >= portalCount)
+                {
+                    throw new IOException(name + " has an index entry past the last record");
+                }
+                else if (record != -1) // Networked portals that were never registered
+                {
+                    ring[count++] = portals[record];
+                }
+            }
+
+            networkMembers[i] = Arrays.copyOf(ring, count);
+        }
+
+        if (buffer.hasRemaining())
+        {
+            throw new IOException(name + " has " + buffer.remaining() + " bytes past the index");
+        }
+
+        return new RegistrySnapshot(portals, locations, portalNetworks, networks, networkMembers);
+    }
+
+    final long[] portals, portalNetworks, networks;
+    final long[][] networkMembers;
+    final WorldCoordinates[] locations;
+
+    RegistrySnapshot(long[] portals, WorldCoordinates[] locations, long[] portalNetworks, long[] networks, long[][] networkMembers)
+    {
+        this.portals = portals;
+        this.locations = locations;
+        this.portalNetworks = portalNetworks;
+        this.networks = networks;
+        this.networkMembers = networkMembers;
+    }
+
+    public RegistrySnapshot(NetworkManager manager)
+    {
+        portals = manager.portalCoordinates.keys();
+        Arrays.sort(portals);
+        locations = new WorldCoordinates[portals.length];
+        portalNetworks = new long[portals.length];
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            Long network = manager.portalNetworks.get(portals[i]);
+            locations[i] = new WorldCoordinates(manager.portalCoordinates.get(portals[i]));
+            portalNetworks[i] = network == null ? GlyphAddress.NONE : network;
+        }
+
+        long[] allNetworks = manager.networkedPortals.keys();
+        int count = 0;
+
+        for (long network : allNetworks)
+        {
+            if (!manager.networkedPortals.get(network).isEmpty())
+            {
+                allNetworks[count++] = network;
+            }
+        }
+
+        networks = Arrays.copyOf(allNetworks, count);
+        networkMembers = new long[count][];
+
+        for (int i = 0; i < count; i++)
+        {
+            networkMembers[i] = manager.networkedPortals.get(networks[i]).toArray();
+        }
+    }
+
+    /***
+     * Adds the snapshot's portals and networks to the manager, which should be empty. Network members go in in rotation order; any networked portal the index missed goes on the end of its network.
+     */
+    public void apply(NetworkManager manager)
+    {
+        manager.presize(portals.length, networks.length);
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            manager.addPortal(portals[i], locations[i]);
+        }
+
+        for (int i = 0; i < networks.length; i++)
+        {
+            for (long member : networkMembers[i])
+            {
+                manager.addPortalToNetwork(member, networks[i]);
+            }
+        }
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            if (portalNetworks[i] != GlyphAddress.NONE)
+            {
+                manager.addPortalToNetwork(portals[i], portalNetworks[i]);
+            }
+        }
+    }
+
+    byte[] toByteArray()
+    {
+        LongMap<Integer> recordIndex = new LongMap<Integer>(portals.length);
+        int indexSize = 0;
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            recordIndex.put(portals[i], i);
+        }
+
+        for (long[] members : networkMembers)
+        {
+            indexSize += 12 + members.length * 4;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + portals.length * RECORD_SIZE + indexSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(portals.length);
+        buffer.putInt(networks.length);
+
+        for (int i = 0; i < portals.length; i++)
+        {
+            buffer.putLong(portals[i]);
+            buffer.putInt(locations[i].posX);
+            buffer.putInt(locations[i].posY);
+            buffer.putInt(locations[i].posZ);
+            buffer.putInt(locations[i].dimension);
+            buffer.putLong(portalNetworks[i]);
+        }
+
+        for (int i = 0; i < networks.length; i++)
+        {
+            buffer.putLong(networks[i]);
+            buffer.putInt(networkMembers[i].length);
+
+            for (long member : networkMembers[i])
+            {
+                Integer record = recordIndex.get(member);
+                buffer.putInt(record == null ? -1 : record); // Networked portals that were never registered are skipped on load
+            }
+        }
+
+        return buffer.array();
+    }
+
+    /***
+     * Writes the snapshot in the binary format, replacing the file atomically.
+     */
+    public void write(File file) throws IOException
+    {
+        RegistryWriter.writeAtomically(file, toByteArray());
+    }
+}
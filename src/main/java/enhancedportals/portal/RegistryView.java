@@ -0,0 +1,30 @@
+package enhancedportals.portal;
+
+import java.util.HashMap;
+
+import enhancedportals.utility.LongMap;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Read-only copy of the {@link NetworkManager} registry. Never changed once built, so it can be read from any thread (such as ComputerCraft's) without locking. The manager builds a new one on the first read after each change. Its maps and network rings are the manager's own, which the manager copies before changing.
+ */
+public class RegistryView
+{
+    final LongMap<WorldCoordinates> portalCoordinates;
+    final HashMap<WorldCoordinates, Long> portalCoordinatesReverse;
+    final LongMap<Long> portalNetworks;
+    final LongMap<NetworkRing> networkedPortals;
+
+    /***
+     * Must be called while holding the manager's lock.
+     */
+    RegistryView(NetworkManager manager)
+    {
+        portalCoordinates = manager.portalCoordinates;
+        portalCoordinatesReverse = manager.portalCoordinatesReverse;
+        portalNetworks = manager.portalNetworks;
+        networkedPortals = manager.networkedPortals;
+        manager.coordinatesShared = manager.networksShared = manager.ringsShared = true;
+        manager.ownedRings.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package enhancedportals.portal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import enhancedportals.EnhancedPortals;
+
+/***
+ * Writes the portal registry to disk on a background thread, so world saves don't stall on disk I/O. Tasks run one at a time, in the order they were submitted.
+ */
+public class RegistryWriter
+{
+    /***
+     * @return The file a new version of the target is written to before it's published
+     */
+    static File getTempFile(File target)
+    {
+        return new File(target.getParentFile(), target.getName() + ".tmp");
+    }
+
+    /***
+     * Replaces the target file with the temporary one. Where the rename can replace an existing file it's atomic, so the target is always either the old or the new complete file. Windows won't rename over an existing file, so there the target is deleted first, and a crash in between leaves only the temporary file; {@link NetworkManager#loadSnapshot} looks for it when the target is missing.
+     */
+    static void publish(File temp, File target) throws IOException
+    {
+        if (!temp.renameTo(target))
+        {
+            // Windows won't rename over an existing file
+            if (!target.delete() || !temp.renameTo(target))
+            {
+                throw new IOException("Could not replace " + target.getName());
+            }
+        }
+    }
+
+    /***
+     * Writes the data to a temporary file next to the target, syncs it to disk, then publishes it with {@link #publish}.
+     */
+    public static void writeAtomically(File target, byte[] data) throws IOException
+    {
+        File temp = getTempFile(target);
+        FileOutputStream out = new FileOutputStream(temp);
+
+        try
+        {
+            out.write(data);
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+
+        publish(temp, target);
+    }
+
+    ExecutorService executor;
+
+    public RegistryWriter()
+    {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "EnhancedPortals Registry Writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /***
+     * Stops accepting new tasks and waits for the queued ones to finish.
+     */
+    public void close()
+    {
+        executor.shutdown();
+
+        try
+        {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                EnhancedPortals.logger.warn("Timed out waiting for the portal registry to be written");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void submit(final Runnable task)
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Exception e)
+                {
+                    EnhancedPortals.logger.catching(e);
+                }
+            }
+        });
+    }
+}
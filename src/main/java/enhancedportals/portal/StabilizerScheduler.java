@@ -0,0 +1,194 @@
+package enhancedportals.portal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.minecraft.world.World;
+import net.minecraftforge.common.DimensionManager;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent.Phase;
+import cpw.mods.fml.common.gameevent.TickEvent.WorldTickEvent;
+import enhancedportals.tileentity.TileStabilizerMain;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Drives Dimensional Bridge Stabilizers, which don't tick themselves. A stabilizer with active connections is billed at the world time it asks for, and one with something in its slot is charged from it each tick until there's nothing left to do. Idle stabilizers aren't in here at all. Dials are admitted here too, a few per tick, so a row of portals redialling after a brownout is spread over several ticks rather than set up at once.
+ */
+public class StabilizerScheduler
+{
+    static class PendingDial
+    {
+        World world;
+        WorldCoordinates destination;
+        Runnable establish;
+
+        PendingDial(World world, WorldCoordinates destination, Runnable establish)
+        {
+            this.world = world;
+            this.destination = destination;
+            this.establish = establish;
+        }
+    }
+
+    /*** Dials admitted each tick from each dimension's queue ***/
+    static final int DIALS_PER_TICK = 4;
+    static HashMap<Integer, StabilizerScheduler> worlds = new HashMap<Integer, StabilizerScheduler>();
+
+    /*** Dials not yet handed to their world's scheduler. Computers dial from their own threads, so this is the only part of the scheduler they touch ***/
+    static ConcurrentLinkedQueue<PendingDial> incomingDials = new ConcurrentLinkedQueue<PendingDial>();
+
+    /***
+     * Charges the stabilizer from its slot every tick until {@link TileStabilizerMain#chargeFromInventory} says it's done.
+     */
+    public static void charge(TileStabilizerMain stabilizer)
+    {
+        get(stabilizer.getWorldObj()).charging.add(stabilizer);
+    }
+
+    public static void clear()
+    {
+        worlds.clear();
+        incomingDials.clear();
+    }
+
+    /***
+     * Queues a dial from a portal in the world. Once admitted, the destination's chunk is loaded and the dial set up on the server thread. Safe to call from any thread.
+     */
+    public static void dial(World world, WorldCoordinates destination, Runnable establish)
+    {
+        incomingDials.add(new PendingDial(world, destination, establish));
+    }
+
+    static StabilizerScheduler get(World world)
+    {
+        StabilizerScheduler scheduler = worlds.get(world.provider.dimensionId);
+
+        if (scheduler == null)
+        {
+            scheduler = new StabilizerScheduler();
+            worlds.put(world.provider.dimensionId, scheduler);
+        }
+
+        return scheduler;
+    }
+
+    /***
+     * Stops charging the stabilizer, and takes it out of the bill it's due in.
+     */
+    public static void remove(TileStabilizerMain stabilizer)
+    {
+        StabilizerScheduler scheduler = worlds.get(stabilizer.getWorldObj().provider.dimensionId);
+
+        if (scheduler == null)
+        {
+            return;
+        }
+
+        scheduler.charging.remove(stabilizer);
+        ArrayList<TileStabilizerMain> due = scheduler.billing.get(stabilizer.getBillingTime());
+
+        if (due != null && due.remove(stabilizer) && due.isEmpty())
+        {
+            scheduler.billing.remove(stabilizer.getBillingTime());
+        }
+    }
+
+    /***
+     * Bills the stabilizer once the given number of ticks have passed.
+     *
+     * @return The world time it will be billed at
+     */
+    public static long scheduleBilling(TileStabilizerMain stabilizer, int delay)
+    {
+        long time = stabilizer.getWorldObj().getTotalWorldTime() + Math.max(delay, 1);
+        TreeMap<Long, ArrayList<TileStabilizerMain>> billing = get(stabilizer.getWorldObj()).billing;
+        ArrayList<TileStabilizerMain> due = billing.get(time);
+
+        if (due == null)
+        {
+            due = new ArrayList<TileStabilizerMain>();
+            billing.put(time, due);
+        }
+
+        due.add(stabilizer);
+        return time;
+    }
+
+    /***
+     * Drops the scheduler of a world that's being unloaded, along with everything it was holding on to.
+     */
+    public static void unload(World world)
+    {
+        if (!world.isRemote)
+        {
+            worlds.remove(world.provider.dimensionId);
+        }
+    }
+
+    /*** Stabilizers to bill, by world time. Every time up to the current one is billed each tick, as other dimensions can tick in between and a dimension may never see a particular value of the shared world time ***/
+    TreeMap<Long, ArrayList<TileStabilizerMain>> billing = new TreeMap<Long, ArrayList<TileStabilizerMain>>();
+    LinkedHashSet<TileStabilizerMain> charging = new LinkedHashSet<TileStabilizerMain>();
+    ArrayDeque<PendingDial> dials = new ArrayDeque<PendingDial>();
+
+    void process(long time)
+    {
+        while (!billing.isEmpty() && billing.firstKey() <= time)
+        {
+            Entry<Long, ArrayList<TileStabilizerMain>> due = billing.pollFirstEntry();
+
+            for (TileStabilizerMain stabilizer : due.getValue())
+            {
+                if (!stabilizer.isInvalid() && stabilizer.getBillingTime() == due.getKey()) // Otherwise it's been unloaded, or rescheduled
+                {
+                    stabilizer.bill();
+                }
+            }
+        }
+
+        for (Iterator<TileStabilizerMain> it = charging.iterator(); it.hasNext();)
+        {
+            TileStabilizerMain stabilizer = it.next();
+
+            if (stabilizer.isInvalid() || !stabilizer.chargeFromInventory())
+            {
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < DIALS_PER_TICK && !dials.isEmpty(); i++)
+        {
+            PendingDial dial = dials.poll();
+            dial.destination.loadChunk(dial.establish);
+        }
+    }
+
+    @SubscribeEvent
+    public void worldTick(WorldTickEvent event)
+    {
+        if (event.phase != Phase.END || event.world.isRemote)
+        {
+            return;
+        }
+
+        for (PendingDial dial = incomingDials.poll(); dial != null; dial = incomingDials.poll())
+        {
+            if (DimensionManager.getWorld(dial.world.provider.dimensionId) == dial.world) // Dials from a world that's since unloaded are dropped
+            {
+                get(dial.world).dials.add(dial);
+            }
+        }
+
+        StabilizerScheduler scheduler = worlds.get(event.world.provider.dimensionId);
+
+        if (scheduler != null)
+        {
+            scheduler.process(event.world.getTotalWorldTime());
+        }
+    }
+}
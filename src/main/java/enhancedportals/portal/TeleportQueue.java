@@ -0,0 +1,115 @@
+package enhancedportals.portal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.world.World;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent.Phase;
+import cpw.mods.fml.common.gameevent.TickEvent.WorldTickEvent;
+import enhancedportals.tileentity.TileController;
+import enhancedportals.utility.WorldCoordinates;
+
+/***
+ * Entities touching portal blocks are queued here rather than teleported in the middle of collision handling. An entity overlapping many portal blocks is only queued once per tick. Each world's queue is handled at the end of its tick, a destination dimension at a time.
+ */
+public class TeleportQueue
+{
+    /*** Entities waiting to go through a portal, and the controller of that portal, by dimension ***/
+    static HashMap<Integer, LinkedHashMap<Entity, TileController>> queues = new HashMap<Integer, LinkedHashMap<Entity, TileController>>();
+
+    /***
+     * Queues the entity to go through the portal at the end of this tick, unless it's already queued.
+     *
+     * @return False if it was already queued
+     */
+    public static boolean add(Entity entity, TileController controller)
+    {
+        int dimension = entity.worldObj.provider.dimensionId;
+        LinkedHashMap<Entity, TileController> queue = queues.get(dimension);
+
+        if (queue == null)
+        {
+            queue = new LinkedHashMap<Entity, TileController>();
+            queues.put(dimension, queue);
+        }
+
+        if (queue.containsKey(entity))
+        {
+            return false;
+        }
+
+        queue.put(entity, controller);
+        return true;
+    }
+
+    public static void clear()
+    {
+        queues.clear();
+    }
+
+    static void process(LinkedHashMap<Entity, TileController> queue)
+    {
+        LinkedHashMap<Integer, ArrayList<Entity>> byDestination = new LinkedHashMap<Integer, ArrayList<Entity>>();
+
+        for (Entry<Entity, TileController> entry : queue.entrySet())
+        {
+            WorldCoordinates destination = entry.getValue().getDestinationLocation();
+            int dimension = destination == null ? entry.getKey().worldObj.provider.dimensionId : destination.dimension;
+            ArrayList<Entity> entities = byDestination.get(dimension);
+
+            if (entities == null)
+            {
+                entities = new ArrayList<Entity>();
+                byDestination.put(dimension, entities);
+            }
+
+            entities.add(entry.getKey());
+        }
+
+        for (ArrayList<Entity> entities : byDestination.values())
+        {
+            for (Entity entity : entities)
+            {
+                TileController controller = queue.get(entity);
+
+                if (!entity.isDead && !controller.isInvalid())
+                {
+                    controller.onEntityEnterPortal(entity);
+                }
+
+                EntityManager.setEntityPortalCooldown(entity);
+            }
+        }
+    }
+
+    /***
+     * Drops the queue of a world that's being unloaded, along with the entities and controllers in it.
+     */
+    public static void unload(World world)
+    {
+        if (!world.isRemote)
+        {
+            queues.remove(world.provider.dimensionId);
+        }
+    }
+
+    @SubscribeEvent
+    public void worldTick(WorldTickEvent event)
+    {
+        if (event.phase != Phase.END || event.world.isRemote)
+        {
+            return;
+        }
+
+        LinkedHashMap<Entity, TileController> queue = queues.remove(event.world.provider.dimensionId);
+
+        if (queue != null)
+        {
+            process(queue);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package enhancedportals.tileentity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import li.cil.oc.api.network.Arguments;
@@ -33,13 +34,21 @@ import enhancedportals.item.ItemNanobrush;
 import enhancedportals.network.CommonProxy;
 import enhancedportals.network.GuiHandler;
 import enhancedportals.network.packet.PacketRerender;
+import enhancedportals.portal.ConnectionChunkLoader;
+import enhancedportals.portal.EnergyBus;
 import enhancedportals.portal.EntityManager;
 import enhancedportals.portal.GlyphIdentifier;
+import enhancedportals.portal.PortalBlockIndex;
 import enhancedportals.portal.PortalException;
 import enhancedportals.portal.PortalTextureManager;
 import enhancedportals.portal.PortalUtils;
+import enhancedportals.portal.StabilizerScheduler;
+import enhancedportals.utility.BulkBlockWriter;
 import enhancedportals.utility.ComputerUtils;
 import enhancedportals.utility.GeneralUtils;
+import enhancedportals.utility.PackedCoordinateList;
+import enhancedportals.utility.PackedCoordinates;
+import enhancedportals.utility.TickBudget;
 import enhancedportals.utility.WorldCoordinates;
 
 @InterfaceList(value = { @Interface(iface = "dan200.computercraft.api.peripheral.IPeripheral", modid = EnhancedPortals.MODID_COMPUTERCRAFT), @Interface(iface = "li.cil.oc.api.network.SimpleComponent", modid = EnhancedPortals.MODID_OPENCOMPUTERS) })
@@ -50,18 +59,31 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         REQUIRES_LOCATION, REQUIRES_WRENCH, FINALIZED
     }
 
-    ArrayList<ChunkCoordinates> portalFrames = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> portalBlocks = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> redstoneInterfaces = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> networkInterfaces = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> diallingDevices = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> transferFluids = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> transferItems = new ArrayList<ChunkCoordinates>();
-    ArrayList<ChunkCoordinates> transferEnergy = new ArrayList<ChunkCoordinates>();
+    PackedCoordinateList portalFrames = new PackedCoordinateList();
+    PackedCoordinateList portalBlocks = new PackedCoordinateList();
+    PackedCoordinateList redstoneInterfaces = new PackedCoordinateList();
+    PackedCoordinateList networkInterfaces = new PackedCoordinateList();
+    PackedCoordinateList diallingDevices = new PackedCoordinateList();
+    PackedCoordinateList transferFluids = new PackedCoordinateList();
+    PackedCoordinateList transferItems = new PackedCoordinateList();
+    PackedCoordinateList transferEnergy = new PackedCoordinateList();
 
     ChunkCoordinates programmableInterface;
     ChunkCoordinates moduleManipulator;
 
+    /*** The component tiles at the coordinates above, looked up once by {@link #resolveComponents} rather than on every event ***/
+    TileRedstoneInterface[] cachedRedstoneInterfaces;
+    TileDiallingDevice[] cachedDiallingDevices;
+    TileTransferFluid[] cachedTransferFluids;
+    TileTransferItem[] cachedTransferItems;
+    TileTransferEnergy[] cachedTransferEnergy;
+    TileProgrammableInterface cachedProgrammableInterface;
+    TileModuleManipulator cachedModuleManipulator;
+    boolean componentsResolved;
+
+    /*** World time to look again for components that were missing, or 0 if none were ***/
+    long componentsRetryTime;
+
     WorldCoordinates dimensionalBridgeStabilizer, temporaryDBS;
 
     public PortalTextureManager activeTextureData = new PortalTextureManager(), inactiveTextureData;
@@ -70,12 +92,44 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
 
     public int connectedPortals = -1, instability = 0, portalType = 0;
 
+    /*** Connections dialled from portals with a lower priority are dropped first when the stabilizer runs short of power ***/
+    int connectionPriority;
+
+    static final int EXIT_UNKNOWN = -2, EXIT_NONE = -1;
+
+    /*** Ticks to wait before looking for missing components again, unless the cache is cleared first ***/
+    static final int COMPONENT_RETRY_DELAY = 20;
+
+    /*** For each entity height, the index in {@link #portalBlocks} of the first place such an entity fits, {@link #EXIT_NONE} if there isn't one, or {@link #EXIT_UNKNOWN} if it hasn't been looked for since the portal last changed ***/
+    int[] exitLocations = new int[0];
+
+    /*** How many of {@link #portalBlocks} have been placed while the portal is being built over several ticks, or -1 when it isn't being built ***/
+    int portalBlocksPlaced = -1;
+
+    /*** Holds the blocks {@link #portalBuild} has placed until the portal is finished, so it's only lit once ***/
+    BulkBlockWriter portalWriter;
+
     boolean processing;
+
+    /*** Set while waiting for the destination chunk of a dial to load. Dials can come from computer threads, so these are volatile ***/
+    volatile boolean dialPending;
+
+    /*** Changed by {@link #cancelDial}, so a pending dial that sees a different value when it's admitted is ignored ***/
+    volatile int dialGeneration;
+
+    /*** Set when the chunk unloads, for anything that holds on to this tile ***/
+    boolean unloaded;
+
+    /*** Carries energy out through the connection while the portal is active ***/
+    EnergyBus energyBus;
     public boolean isPublic;
 
     GlyphIdentifier cachedDestinationUID;
     WorldCoordinates cachedDestinationLoc;
 
+    /*** Why the last attempt to find the portal failed, so it isn't searched for again until something changes ***/
+    public PortalUtils.Detection portalDetection;
+
     @SideOnly(Side.CLIENT)
     GlyphIdentifier uID, nID;
 
@@ -153,6 +207,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         }
 
         activeTextureData.writeToNBT(tag, "Texture");
+        portalBlocks.writeToNBT(tag, "Portals"); // So the client can find the controller of each portal block
 
         if (moduleManipulator != null)
         {
@@ -165,31 +220,37 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     public void addDialDevice(ChunkCoordinates chunkCoordinates)
     {
         diallingDevices.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     public void addNetworkInterface(ChunkCoordinates chunkCoordinates)
     {
         networkInterfaces.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     public void addRedstoneInterface(ChunkCoordinates chunkCoordinates)
     {
         redstoneInterfaces.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     public void addTransferEnergy(ChunkCoordinates chunkCoordinates)
     {
         transferEnergy.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     public void addTransferFluid(ChunkCoordinates chunkCoordinates)
     {
         transferFluids.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     public void addTransferItem(ChunkCoordinates chunkCoordinates)
     {
         transferItems.add(chunkCoordinates);
+        clearComponentCache();
     }
 
     @Override
@@ -224,6 +285,20 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     {
         cachedDestinationUID = id;
         cachedDestinationLoc = wc;
+        energyBus = null;
+
+        if (!worldObj.isRemote)
+        {
+            if (wc == null)
+            {
+                ConnectionChunkLoader.release(this);
+            }
+            else
+            {
+                ConnectionChunkLoader.keepLoaded(this, wc);
+            }
+        }
+
         markDirty();
         worldObj.markBlockForUpdate(xCoord, yCoord, zCoord);
     }
@@ -268,16 +343,63 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         {
             return comp_SetParticleColour(arguments);
         }
+        else if (method == 9) // getConnectionPriority
+        {
+            return new Object[] { connectionPriority };
+        }
+        else if (method == 10) // setConnectionPriority
+        {
+            return comp_SetConnectionPriority(arguments);
+        }
 
         return null;
     }
 
+    /***
+     * Forgets any dial waiting to be admitted, so it won't establish a connection when it is.
+     */
+    void cancelDial()
+    {
+        dialGeneration++;
+        dialPending = false;
+    }
+
+    boolean canExitAt(long c, int entityHeight)
+    {
+        int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
+
+        for (int i = 0; i < entityHeight; i++)
+        {
+            if (worldObj.getBlock(x, y + i, z) != BlockPortal.instance && !worldObj.isAirBlock(x, y + i, z))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     @Override
     public boolean canUpdate()
     {
         return true;
     }
 
+    /***
+     * Forgets the resolved component tiles, so they're looked up again next time they're needed. Called whenever the structure changes, or one of the components is unloaded or invalidated.
+     */
+    public void clearComponentCache()
+    {
+        componentsResolved = false;
+        cachedRedstoneInterfaces = null;
+        cachedDiallingDevices = null;
+        cachedTransferFluids = null;
+        cachedTransferItems = null;
+        cachedTransferEnergy = null;
+        cachedProgrammableInterface = null;
+        cachedModuleManipulator = null;
+    }
+
     Object[] comp_GetUniqueIdentifier()
     {
         GlyphIdentifier identifier = getIdentifierUnique();
@@ -292,6 +414,25 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         }
     }
 
+    Object[] comp_SetConnectionPriority(Object[] arguments) throws Exception
+    {
+        if (arguments.length != 1)
+        {
+            throw new Exception("Invalid arguments");
+        }
+
+        try
+        {
+            setConnectionPriority(arguments[0] instanceof Number ? ((Number) arguments[0]).intValue() : Integer.parseInt(arguments[0].toString()));
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new Exception("Couldn't parse input as a number");
+        }
+
+        return new Object[] { true };
+    }
+
     Object[] comp_SetFrameColour(Object[] arguments) throws Exception
     {
         if (arguments.length > 1 || arguments.length == 1 && arguments[0].toString().length() == 0)
@@ -436,6 +577,11 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
             ((TilePortalPart) tile).setPortalController(getChunkCoordinates());
         }
 
+        clearComponentCache();
+        invalidateExitLocations();
+        portalBlocks.sort(); // Keeps them down to a few runs when saved
+        portalFrames.sort();
+        PortalBlockIndex.add(worldObj, getChunkCoordinates(), portalBlocks);
         portalState = ControlState.FINALIZED;
         markDirty();
         worldObj.markBlockForUpdate(xCoord, yCoord, zCoord);
@@ -458,7 +604,15 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
                 throw new PortalException("stabilizerNotFound");
             }
 
-            dbs.setupNewConnection(getIdentifierUnique(), EnhancedPortals.proxy.networkManager.getDestination(getIdentifierUnique(), getIdentifierNetwork()), null);
+            GlyphIdentifier destination = EnhancedPortals.proxy.networkManager.getDestination(getIdentifierUnique(), getIdentifierNetwork());
+
+            if (destination == null)
+            {
+                throw new PortalException("noPortalWithThatIdentifierReceiving");
+            }
+
+            connectionDial(destination, null, null);
+            return;
         }
         catch (PortalException e)
         {
@@ -473,13 +627,42 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         markDirty();
     }
 
-    public void connectionDial(GlyphIdentifier id, PortalTextureManager m, EntityPlayer player)
+    /***
+     * Dials the specified portal once the {@link StabilizerScheduler} admits the dial and the portal's chunk has loaded, usually within a tick or two.
+     */
+    public void connectionDial(final GlyphIdentifier id, final PortalTextureManager m, final EntityPlayer player)
     {
-        if (worldObj.isRemote)
+        if (worldObj.isRemote || dialPending)
         {
             return;
         }
 
+        WorldCoordinates destination = EnhancedPortals.proxy.networkManager.getPortalLocation(id);
+
+        if (destination == null)
+        {
+            connectionEstablish(id, m, player); // Let the stabilizer report it
+            return;
+        }
+
+        final int generation = ++dialGeneration;
+        dialPending = true;
+        StabilizerScheduler.dial(worldObj, destination, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (generation == dialGeneration && !isInvalid() && !unloaded)
+                {
+                    dialPending = false;
+                    connectionEstablish(id, m, player);
+                }
+            }
+        });
+    }
+
+    void connectionEstablish(GlyphIdentifier id, PortalTextureManager m, EntityPlayer player)
+    {
         try
         {
             TileStabilizerMain dbs = getDimensionalBridgeStabilizer();
@@ -510,7 +693,14 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
 
     public void connectionTerminate()
     {
-        if (worldObj.isRemote || processing)
+        if (worldObj.isRemote)
+        {
+            return;
+        }
+
+        cancelDial();
+
+        if (processing)
         {
             return;
         }
@@ -641,6 +831,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
             }
         }
 
+        PortalBlockIndex.remove(worldObj, getChunkCoordinates(), portalBlocks);
         portalBlocks.clear();
         portalFrames.clear();
         redstoneInterfaces.clear();
@@ -651,6 +842,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         transferEnergy.clear();
         programmableInterface = null;
         moduleManipulator = null;
+        clearComponentCache();
         portalState = ControlState.REQUIRES_WRENCH;
         markDirty();
         worldObj.markBlockForUpdate(xCoord, yCoord, zCoord);
@@ -677,6 +869,18 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return "ep_controller";
     }
 
+    public int getConnectionPriority()
+    {
+        return connectionPriority;
+    }
+
+    @Callback(direct = true)
+    @Method(modid = EnhancedPortals.MODID_OPENCOMPUTERS)
+    public Object[] getConnectionPriority(Context context, Arguments args)
+    {
+        return new Object[] { connectionPriority };
+    }
+
     /**
      * @return Returns the destination portal UID.
      */
@@ -695,36 +899,31 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
 
     public TileDiallingDevice getDialDeviceRandom()
     {
-        ChunkCoordinates dial = null;
+        TileDiallingDevice[] dials = getDiallingDeviceTiles();
 
-        if (diallingDevices.isEmpty())
+        if (dials.length == 0)
         {
             return null;
         }
-        else if (diallingDevices.size() == 1)
-        {
-            dial = diallingDevices.get(0);
-        }
-        else
-        {
-            dial = diallingDevices.get(new Random().nextInt(diallingDevices.size()));
-        }
-
-        TileEntity tile = worldObj.getTileEntity(dial.posX, dial.posY, dial.posZ);
-
-        if (tile != null && tile instanceof TileDiallingDevice)
+        else if (dials.length == 1)
         {
-            return (TileDiallingDevice) tile;
+            return dials[0];
         }
 
-        return null;
+        return dials[new Random().nextInt(dials.length)];
     }
 
-    public ArrayList<ChunkCoordinates> getDiallingDevices()
+    public PackedCoordinateList getDiallingDevices()
     {
         return diallingDevices;
     }
 
+    public TileDiallingDevice[] getDiallingDeviceTiles()
+    {
+        resolveComponents();
+        return cachedDiallingDevices;
+    }
+
     public TileStabilizerMain getDimensionalBridgeStabilizer()
     {
         if (temporaryDBS != null)
@@ -778,6 +977,56 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return null;
     }
 
+    /***
+     * Finds where an entity of the specified height can come out of this portal. The place found for each height is remembered until the portal or the blocks around it change, and checked again before it's reused.
+     * 
+     * @return Null if there's nowhere the entity fits
+     */
+    public ChunkCoordinates getExitLocation(int entityHeight)
+    {
+        entityHeight = Math.max(entityHeight, 0);
+
+        if (entityHeight >= exitLocations.length)
+        {
+            int length = exitLocations.length;
+            exitLocations = Arrays.copyOf(exitLocations, entityHeight + 1);
+            Arrays.fill(exitLocations, length, exitLocations.length, EXIT_UNKNOWN);
+        }
+
+        int index = exitLocations[entityHeight];
+
+        if (index == EXIT_UNKNOWN || index >= 0 && (index >= portalBlocks.size() || !canExitAt(portalBlocks.getPacked(index), entityHeight)))
+        {
+            index = EXIT_NONE;
+
+            for (int i = 0; i < portalBlocks.size(); i++)
+            {
+                if (canExitAt(portalBlocks.getPacked(i), entityHeight))
+                {
+                    index = i;
+                    break;
+                }
+            }
+
+            exitLocations[entityHeight] = index;
+        }
+
+        if (index == EXIT_NONE)
+        {
+            return null;
+        }
+
+        long c = portalBlocks.getPacked(index);
+        int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
+
+        if (portalType == 3 && !worldObj.isAirBlock(x, y + 1, z))
+        {
+            return new ChunkCoordinates(x, y - 1, z);
+        }
+
+        return new ChunkCoordinates(x, y, z);
+    }
+
     @Callback(direct = true)
     @Method(modid = EnhancedPortals.MODID_OPENCOMPUTERS)
     public Object[] getFrameColour(Context context, Arguments args) throws Exception
@@ -785,7 +1034,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return new Object[] { activeTextureData.getFrameColour() };
     }
 
-    public ArrayList<ChunkCoordinates> getFrames()
+    public PackedCoordinateList getFrames()
     {
         return portalFrames;
     }
@@ -836,25 +1085,16 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     @Method(modid = EnhancedPortals.MODID_COMPUTERCRAFT)
     public String[] getMethodNames()
     {
-        return new String[] { "isPortalActive", "getUniqueIdentifier", "setUniqueIdentifier", "getFrameColour", "setFrameColour", "getPortalColour", "setPortalColour", "getParticleColour", "setParticleColour" };
+        return new String[] { "isPortalActive", "getUniqueIdentifier", "setUniqueIdentifier", "getFrameColour", "setFrameColour", "getPortalColour", "setPortalColour", "getParticleColour", "setParticleColour", "getConnectionPriority", "setConnectionPriority" };
     }
 
     public TileModuleManipulator getModuleManipulator()
     {
-        if (moduleManipulator != null)
-        {
-            TileEntity tile = worldObj.getTileEntity(moduleManipulator.posX, moduleManipulator.posY, moduleManipulator.posZ);
-
-            if (tile instanceof TileModuleManipulator)
-            {
-                return (TileModuleManipulator) tile;
-            }
-        }
-
-        return null;
+        resolveComponents();
+        return cachedModuleManipulator;
     }
 
-    public ArrayList<ChunkCoordinates> getNetworkInterfaces()
+    public PackedCoordinateList getNetworkInterfaces()
     {
         return networkInterfaces;
     }
@@ -879,46 +1119,61 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return isFinalized() ? this : null;
     }
 
-    public ArrayList<ChunkCoordinates> getPortals()
+    public PackedCoordinateList getPortals()
     {
         return portalBlocks;
     }
 
     public TileProgrammableInterface getProgrammableInterface()
     {
-        if (programmableInterface != null)
-        {
-            TileEntity tile = worldObj.getTileEntity(programmableInterface.posX, programmableInterface.posY, programmableInterface.posZ);
-
-            if (tile instanceof TileProgrammableInterface)
-            {
-                return (TileProgrammableInterface) tile;
-            }
-        }
-
-        return null;
+        resolveComponents();
+        return cachedProgrammableInterface;
     }
 
-    public ArrayList<ChunkCoordinates> getRedstoneInterfaces()
+    public PackedCoordinateList getRedstoneInterfaces()
     {
         return redstoneInterfaces;
     }
 
-    public ArrayList<ChunkCoordinates> getTransferEnergy()
+    public TileRedstoneInterface[] getRedstoneInterfaceTiles()
+    {
+        resolveComponents();
+        return cachedRedstoneInterfaces;
+    }
+
+    public PackedCoordinateList getTransferEnergy()
     {
         return transferEnergy;
     }
 
-    public ArrayList<ChunkCoordinates> getTransferFluids()
+    public TileTransferEnergy[] getTransferEnergyTiles()
+    {
+        resolveComponents();
+        return cachedTransferEnergy;
+    }
+
+    public PackedCoordinateList getTransferFluids()
     {
         return transferFluids;
     }
 
-    public ArrayList<ChunkCoordinates> getTransferItems()
+    public TileTransferFluid[] getTransferFluidTiles()
+    {
+        resolveComponents();
+        return cachedTransferFluids;
+    }
+
+    public PackedCoordinateList getTransferItems()
     {
         return transferItems;
     }
 
+    public TileTransferItem[] getTransferItemTiles()
+    {
+        resolveComponents();
+        return cachedTransferItems;
+    }
+
     @Override
     @Method(modid = EnhancedPortals.MODID_COMPUTERCRAFT)
     public String getType()
@@ -933,6 +1188,24 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return comp_GetUniqueIdentifier();
     }
 
+    @Override
+    public void invalidate()
+    {
+        super.invalidate();
+        cancelDial();
+        portalWriterFinish();
+        PortalBlockIndex.remove(worldObj, getChunkCoordinates(), portalBlocks);
+        clearComponentCache();
+    }
+
+    /***
+     * Makes {@link #getExitLocation} look for new places, after the portal or the blocks around it change.
+     */
+    public void invalidateExitLocations()
+    {
+        Arrays.fill(exitLocations, EXIT_UNKNOWN);
+    }
+
     public boolean isFinalized()
     {
         return portalState == ControlState.FINALIZED;
@@ -953,10 +1226,27 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         return new Object[] { isPortalActive() };
     }
 
+    public boolean isUnloaded()
+    {
+        return unloaded;
+    }
+
+    @Override
+    public void onChunkUnload()
+    {
+        super.onChunkUnload();
+        cancelDial();
+        portalWriterFinish();
+        PortalBlockIndex.remove(worldObj, getChunkCoordinates(), portalBlocks);
+        clearComponentCache();
+        unloaded = true;
+    }
+
     @Override
     public void onDataPacket(NBTTagCompound tag)
     {
         portalState = ControlState.values()[tag.getByte("PortalState")];
+        clearComponentCache();
 
         if (tag.hasKey("DestUID"))
         {
@@ -972,15 +1262,19 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         activeTextureData.readFromNBT(tag, "Texture");
         instability = tag.getInteger("Instability");
 
+        PortalBlockIndex.remove(worldObj, getChunkCoordinates(), portalBlocks);
+        portalBlocks.readFromNBT(tag, "Portals");
+        PortalBlockIndex.add(worldObj, getChunkCoordinates(), portalBlocks);
+
         if (tag.hasKey("ModX"))
         {
             moduleManipulator = new ChunkCoordinates(tag.getInteger("ModX"), tag.getInteger("ModY"), tag.getInteger("ModZ"));
         }
     }
 
-    public void onEntityEnterPortal(Entity entity, TilePortal tilePortal)
+    public void onEntityEnterPortal(Entity entity)
     {
-        if (cachedDestinationLoc == null)
+        if (cachedDestinationLoc == null || portalBlocksPlaced != -1)
         {
             return;
         }
@@ -1045,9 +1339,9 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
 
     public void onEntityTouchPortal(Entity entity)
     {
-        for (ChunkCoordinates c : getRedstoneInterfaces())
+        for (TileRedstoneInterface ri : getRedstoneInterfaceTiles())
         {
-            ((TileRedstoneInterface) worldObj.getTileEntity(c.posX, c.posY, c.posZ)).onEntityTeleport(entity);
+            ri.onEntityTeleport(entity);
         }
     }
 
@@ -1057,36 +1351,58 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     }
 
     /**
-     * Creates the portal block. Throws an {@link PortalException} if an error occurs.
+     * Places portal blocks until this tick's {@link TickBudget} runs out, always placing at least one. Each tick's blocks are sent to clients straight away, but the portal is only lit once they're all placed; then it's finished and can be used. Throws an {@link PortalException}, after removing the blocks it placed, if a spot has been filled since {@link #portalCreate} checked it.
      */
-    public void portalCreate() throws PortalException
+    void portalBuild() throws PortalException
     {
-        for (ChunkCoordinates c : portalBlocks) // Check all spots first
+        long start = TickBudget.begin();
+
+        if (portalWriter == null)
         {
-            if (!worldObj.isAirBlock(c.posX, c.posY, c.posZ))
+            portalWriter = new BulkBlockWriter(worldObj);
+        }
+
+        try
+        {
+            for (int i = 0; portalBlocksPlaced < portalBlocks.size(); i++)
             {
-                if (CommonProxy.portalsDestroyBlocks)
+                if (i > 0 && !TickBudget.hasTime(start))
                 {
-                    worldObj.setBlockToAir(c.posX, c.posY, c.posZ);
+                    portalWriter.flush();
+                    return;
                 }
-                else
+
+                ChunkCoordinates c = portalBlocks.get(portalBlocksPlaced);
+
+                if (!worldObj.isAirBlock(c.posX, c.posY, c.posZ) && !CommonProxy.portalsDestroyBlocks)
                 {
+                    portalWriter = null; // Everything it placed is about to be removed and relit
+
+                    if (!processing)
+                    {
+                        processing = true;
+                        portalRemoveBlocks();
+                        processing = false;
+                    }
+
                     throw new PortalException("failedToCreatePortal");
                 }
+
+                portalWriter.setBlock(c.posX, c.posY, c.posZ, BlockPortal.instance, portalType);
+                portalBlocksPlaced++;
             }
         }
-
-        for (ChunkCoordinates c : portalBlocks)
+        finally
         {
-            worldObj.setBlock(c.posX, c.posY, c.posZ, BlockPortal.instance, portalType, 2);
-
-            TilePortal portal = (TilePortal) worldObj.getTileEntity(c.posX, c.posY, c.posZ);
-            portal.portalController = getChunkCoordinates();
+            TickBudget.end(start);
         }
 
-        for (ChunkCoordinates c : getRedstoneInterfaces())
+        portalWriterFinish();
+        portalBlocksPlaced = -1;
+        invalidateExitLocations();
+
+        for (TileRedstoneInterface ri : getRedstoneInterfaceTiles())
         {
-            TileRedstoneInterface ri = (TileRedstoneInterface) worldObj.getTileEntity(c.posX, c.posY, c.posZ);
             ri.onPortalCreated();
         }
 
@@ -1098,6 +1414,23 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         }
     }
 
+    /**
+     * Creates the portal. Throws an {@link PortalException} if an error occurs. Small portals are finished straight away, larger ones are built over the next few ticks by {@link #portalBuild}, and can't be used until they're done.
+     */
+    public void portalCreate() throws PortalException
+    {
+        for (ChunkCoordinates c : portalBlocks) // Check all spots first
+        {
+            if (!worldObj.isAirBlock(c.posX, c.posY, c.posZ) && !CommonProxy.portalsDestroyBlocks)
+            {
+                throw new PortalException("failedToCreatePortal");
+            }
+        }
+
+        portalBlocksPlaced = 0;
+        portalBuild();
+    }
+
     public void portalRemove()
     {
         if (processing)
@@ -1106,15 +1439,10 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         }
 
         processing = true;
+        portalRemoveBlocks();
 
-        for (ChunkCoordinates c : portalBlocks)
-        {
-            worldObj.setBlockToAir(c.posX, c.posY, c.posZ);
-        }
-
-        for (ChunkCoordinates c : getRedstoneInterfaces())
+        for (TileRedstoneInterface ri : getRedstoneInterfaceTiles())
         {
-            TileRedstoneInterface ri = (TileRedstoneInterface) worldObj.getTileEntity(c.posX, c.posY, c.posZ);
             ri.onPortalRemoved();
         }
 
@@ -1128,24 +1456,63 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         processing = false;
     }
 
+    /**
+     * Removes the portal blocks, or only the ones placed so far if it's still being built.
+     */
+    void portalRemoveBlocks()
+    {
+        int count = portalBlocksPlaced == -1 ? portalBlocks.size() : portalBlocksPlaced;
+        BulkBlockWriter writer = new BulkBlockWriter(worldObj);
+        portalBlocksPlaced = -1;
+        portalWriter = null; // This writer relights them
+
+        for (int i = 0; i < count; i++)
+        {
+            ChunkCoordinates c = portalBlocks.get(i);
+
+            if (worldObj.getBlock(c.posX, c.posY, c.posZ) == BlockPortal.instance) // Don't remove anything that was put in the way
+            {
+                writer.setBlockToAir(c.posX, c.posY, c.posZ);
+            }
+        }
+
+        writer.finish(true);
+        invalidateExitLocations();
+    }
+
+    /***
+     * Lights and sends everything {@link #portalBuild} has placed so far. Also done if the controller goes away part way through, so the blocks it leaves behind aren't dark.
+     */
+    void portalWriterFinish()
+    {
+        if (portalWriter != null)
+        {
+            portalWriter.finish(false);
+            portalWriter = null;
+        }
+    }
+
     @Override
     public void readFromNBT(NBTTagCompound tagCompound)
     {
         super.readFromNBT(tagCompound);
 
         portalState = ControlState.values()[tagCompound.getInteger("PortalState")];
+        clearComponentCache();
         instability = tagCompound.getInteger("Instability");
         portalType = tagCompound.getInteger("PortalType");
+        portalBlocksPlaced = tagCompound.hasKey("PortalBlocksPlaced") ? tagCompound.getInteger("PortalBlocksPlaced") : -1;
         isPublic = tagCompound.getBoolean("isPublic");
-
-        portalFrames = GeneralUtils.loadChunkCoordList(tagCompound, "Frames");
-        portalBlocks = GeneralUtils.loadChunkCoordList(tagCompound, "Portals");
-        redstoneInterfaces = GeneralUtils.loadChunkCoordList(tagCompound, "RedstoneInterfaces");
-        networkInterfaces = GeneralUtils.loadChunkCoordList(tagCompound, "NetworkInterface");
-        diallingDevices = GeneralUtils.loadChunkCoordList(tagCompound, "DialDevice");
-        transferEnergy = GeneralUtils.loadChunkCoordList(tagCompound, "TransferEnergy");
-        transferFluids = GeneralUtils.loadChunkCoordList(tagCompound, "TransferFluid");
-        transferItems = GeneralUtils.loadChunkCoordList(tagCompound, "TransferItems");
+        connectionPriority = tagCompound.getInteger("ConnectionPriority");
+
+        portalFrames.readFromNBT(tagCompound, "Frames");
+        portalBlocks.readFromNBT(tagCompound, "Portals");
+        redstoneInterfaces.readFromNBT(tagCompound, "RedstoneInterfaces");
+        networkInterfaces.readFromNBT(tagCompound, "NetworkInterface");
+        diallingDevices.readFromNBT(tagCompound, "DialDevice");
+        transferEnergy.readFromNBT(tagCompound, "TransferEnergy");
+        transferFluids.readFromNBT(tagCompound, "TransferFluid");
+        transferItems.readFromNBT(tagCompound, "TransferItems");
         programmableInterface = GeneralUtils.loadChunkCoord(tagCompound, "ProgrammableInterface");
         moduleManipulator = GeneralUtils.loadChunkCoord(tagCompound, "ModuleManipulator");
         dimensionalBridgeStabilizer = GeneralUtils.loadWorldCoord(tagCompound, "DimensionalBridgeStabilizer");
@@ -1169,6 +1536,65 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     public void removeFrame(ChunkCoordinates chunkCoordinates)
     {
         portalFrames.remove(chunkCoordinates);
+        clearComponentCache();
+    }
+
+    <T extends TilePortalPart> T resolveComponent(ChunkCoordinates c, Class<T> type)
+    {
+        TileEntity tile = worldObj.getTileEntity(c.posX, c.posY, c.posZ);
+
+        if (!type.isInstance(tile))
+        {
+            componentsRetryTime = worldObj.getTotalWorldTime() + COMPONENT_RETRY_DELAY;
+            return null;
+        }
+
+        T part = type.cast(tile);
+
+        if (getChunkCoordinates().equals(part.portalController))
+        {
+            part.cachedController = this;
+        }
+
+        return part;
+    }
+
+    /***
+     * Looks up the component tiles if they aren't already cached. Each component is told this is its controller, so it clears the cache when it goes away. Components that are missing or the wrong type are left out, and looked up again after {@link #COMPONENT_RETRY_DELAY} ticks rather than on every call.
+     */
+    void resolveComponents()
+    {
+        if (componentsResolved && (componentsRetryTime == 0 || worldObj.getTotalWorldTime() < componentsRetryTime))
+        {
+            return;
+        }
+
+        componentsResolved = true;
+        componentsRetryTime = 0;
+        cachedRedstoneInterfaces = resolveComponents(redstoneInterfaces, TileRedstoneInterface.class, new TileRedstoneInterface[0]);
+        cachedDiallingDevices = resolveComponents(diallingDevices, TileDiallingDevice.class, new TileDiallingDevice[0]);
+        cachedTransferFluids = resolveComponents(transferFluids, TileTransferFluid.class, new TileTransferFluid[0]);
+        cachedTransferItems = resolveComponents(transferItems, TileTransferItem.class, new TileTransferItem[0]);
+        cachedTransferEnergy = resolveComponents(transferEnergy, TileTransferEnergy.class, new TileTransferEnergy[0]);
+        cachedProgrammableInterface = programmableInterface == null ? null : resolveComponent(programmableInterface, TileProgrammableInterface.class);
+        cachedModuleManipulator = moduleManipulator == null ? null : resolveComponent(moduleManipulator, TileModuleManipulator.class);
+    }
+
+    <T extends TilePortalPart> T[] resolveComponents(PackedCoordinateList list, Class<T> type, T[] array)
+    {
+        ArrayList<T> parts = new ArrayList<T>(list.size());
+
+        for (ChunkCoordinates c : list)
+        {
+            T part = resolveComponent(c, type);
+
+            if (part != null)
+            {
+                parts.add(part);
+            }
+        }
+
+        return parts.toArray(array);
     }
 
     public void revertTextureData()
@@ -1208,6 +1634,19 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         }
     }
 
+    public void setConnectionPriority(int priority)
+    {
+        connectionPriority = priority;
+        markDirty();
+    }
+
+    @Callback
+    @Method(modid = EnhancedPortals.MODID_OPENCOMPUTERS)
+    public Object[] setConnectionPriority(Context context, Arguments args) throws Exception
+    {
+        return comp_SetConnectionPriority(ComputerUtils.argsToArray(args));
+    }
+
     public void setCustomFrameTexture(int tex)
     {
         activeTextureData.setCustomFrameTexture(tex);
@@ -1361,6 +1800,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     public void setModuleManipulator(ChunkCoordinates chunkCoordinates)
     {
         moduleManipulator = chunkCoordinates;
+        clearComponentCache();
         markDirty();
     }
 
@@ -1422,6 +1862,7 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
     public void setProgrammableInterface(ChunkCoordinates chunkCoordinates)
     {
         programmableInterface = chunkCoordinates;
+        clearComponentCache();
     }
 
     public void setUID(GlyphIdentifier i)
@@ -1457,6 +1898,45 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         markDirty();
     }
 
+    @Override
+    public void updateEntity()
+    {
+        super.updateEntity();
+
+        if (portalBlocksPlaced != -1 && !worldObj.isRemote)
+        {
+            try
+            {
+                portalBuild();
+            }
+            catch (PortalException e)
+            {
+                connectionTerminate();
+            }
+        }
+
+        if (isPortalActive() && !worldObj.isRemote)
+        {
+            if (energyBus == null)
+            {
+                energyBus = new EnergyBus(this);
+            }
+
+            energyBus.update();
+        }
+    }
+
+    @Override
+    public void validate()
+    {
+        super.validate();
+
+        if (worldObj != null)
+        {
+            PortalBlockIndex.add(worldObj, getChunkCoordinates(), portalBlocks);
+        }
+    }
+
     @Override
     public void writeToNBT(NBTTagCompound tagCompound)
     {
@@ -1466,15 +1946,21 @@ public class TileController extends TileFrame implements IPeripheral, SimpleComp
         tagCompound.setInteger("Instability", instability);
         tagCompound.setInteger("PortalType", portalType);
         tagCompound.setBoolean("isPublic", isPublic);
+        tagCompound.setInteger("ConnectionPriority", connectionPriority);
+
+        if (portalBlocksPlaced != -1)
+        {
+            tagCompound.setInteger("PortalBlocksPlaced", portalBlocksPlaced);
+        }
 
-        GeneralUtils.saveChunkCoordList(tagCompound, getFrames(), "Frames");
-        GeneralUtils.saveChunkCoordList(tagCompound, getPortals(), "Portals");
-        GeneralUtils.saveChunkCoordList(tagCompound, getRedstoneInterfaces(), "RedstoneInterfaces");
-        GeneralUtils.saveChunkCoordList(tagCompound, getNetworkInterfaces(), "NetworkInterface");
-        GeneralUtils.saveChunkCoordList(tagCompound, getDiallingDevices(), "DialDevice");
-        GeneralUtils.saveChunkCoordList(tagCompound, getTransferEnergy(), "TransferEnergy");
-        GeneralUtils.saveChunkCoordList(tagCompound, getTransferFluids(), "TransferFluid");
-        GeneralUtils.saveChunkCoordList(tagCompound, getTransferItems(), "TransferItems");
+        portalFrames.writeToNBT(tagCompound, "Frames");
+        portalBlocks.writeToNBT(tagCompound, "Portals");
+        redstoneInterfaces.writeToNBT(tagCompound, "RedstoneInterfaces");
+        networkInterfaces.writeToNBT(tagCompound, "NetworkInterface");
+        diallingDevices.writeToNBT(tagCompound, "DialDevice");
+        transferEnergy.writeToNBT(tagCompound, "TransferEnergy");
+        transferFluids.writeToNBT(tagCompound, "TransferFluid");
+        transferItems.writeToNBT(tagCompound, "TransferItems");
         GeneralUtils.saveChunkCoord(tagCompound, programmableInterface, "ProgrammableInterface");
         GeneralUtils.saveChunkCoord(tagCompound, moduleManipulator, "ModuleManipulator");
         GeneralUtils.saveWorldCoord(tagCompound, dimensionalBridgeStabilizer, "DimensionalBridgeStabilizer");
@@ -1,92 +1,15 @@
 package enhancedportals.tileentity;
 
-import net.minecraft.block.Block;
-import net.minecraft.entity.Entity;
-import net.minecraft.entity.player.EntityPlayer;
-import net.minecraft.item.ItemBlock;
-import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.util.IIcon;
-import enhancedportals.block.BlockPortal;
-import enhancedportals.item.ItemNanobrush;
-import enhancedportals.network.ClientProxy;
-import enhancedportals.network.GuiHandler;
-import enhancedportals.utility.GeneralUtils;
+import net.minecraft.tileentity.TileEntity;
 
-public class TilePortal extends TilePortalPart
+/***
+ * Portal blocks no longer have a tile entity, they're looked up through {@link enhancedportals.portal.PortalBlockIndex}. Still registered so worlds saved by older versions load; the chunk drops these when it finds the block doesn't want one.
+ */
+public class TilePortal extends TileEntity
 {
     @Override
-    public boolean activate(EntityPlayer player, ItemStack stack)
+    public boolean canUpdate()
     {
-        TileController controller = getPortalController();
-
-        if (stack != null && controller != null && controller.isFinalized())
-        {
-            if (GeneralUtils.isWrench(stack))
-            {
-                GuiHandler.openGui(player, controller, GuiHandler.PORTAL_CONTROLLER_A);
-                return true;
-            }
-            else if (stack.getItem() == ItemNanobrush.instance)
-            {
-                GuiHandler.openGui(player, controller, player.isSneaking() ? GuiHandler.TEXTURE_C : GuiHandler.TEXTURE_B);
-                return true;
-            }
-        }
-
         return false;
     }
-
-    @Override
-    public void addDataToPacket(NBTTagCompound tag)
-    {
-
-    }
-
-    public IIcon getBlockTexture(int side)
-    {
-        TileController controller = getPortalController();
-
-        if (controller != null)
-        {
-            if (controller.activeTextureData.hasCustomPortalTexture() && ClientProxy.customPortalTextures.size() > controller.activeTextureData.getCustomPortalTexture() && ClientProxy.customPortalTextures.get(controller.activeTextureData.getCustomPortalTexture()) != null)
-            {
-                return ClientProxy.customPortalTextures.get(controller.activeTextureData.getCustomPortalTexture());
-            }
-            else if (controller.activeTextureData.getPortalItem() != null && controller.activeTextureData.getPortalItem().getItem() instanceof ItemBlock)
-            {
-                return Block.getBlockFromItem(controller.activeTextureData.getPortalItem().getItem()).getIcon(side, controller.activeTextureData.getPortalItem().getItemDamage());
-            }
-        }
-
-        return BlockPortal.instance.getIcon(side, 0);
-    }
-
-    public int getColour()
-    {
-        TileController controller = getPortalController();
-
-        if (controller != null)
-        {
-            return controller.activeTextureData.getPortalColour();
-        }
-
-        return 0xFFFFFF;
-    }
-
-    @Override
-    public void onDataPacket(NBTTagCompound tag)
-    {
-
-    }
-
-    public void onEntityCollidedWithBlock(Entity entity)
-    {
-        TileController controller = getPortalController();
-
-        if (controller != null)
-        {
-            controller.onEntityEnterPortal(entity, this);
-        }
-    }
 }
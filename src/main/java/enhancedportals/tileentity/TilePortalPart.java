@@ -69,6 +69,17 @@ public abstract class TilePortalPart extends TileEP
         return null;
     }
 
+    @Override
+    public void invalidate()
+    {
+        super.invalidate();
+
+        if (cachedController != null)
+        {
+            cachedController.clearComponentCache();
+        }
+    }
+
     /**
      * Called when this block is placed in the world.
      * 
@@ -89,6 +100,17 @@ public abstract class TilePortalPart extends TileEP
         }
     }
 
+    @Override
+    public void onChunkUnload()
+    {
+        super.onChunkUnload();
+
+        if (cachedController != null)
+        {
+            cachedController.clearComponentCache();
+        }
+    }
+
     public abstract void onDataPacket(NBTTagCompound tag);
 
     @Override
@@ -21,11 +21,13 @@ import cpw.mods.fml.relauncher.SideOnly;
 import enhancedportals.block.BlockStabilizer;
 import enhancedportals.network.CommonProxy;
 import enhancedportals.utility.GeneralUtils;
-import enhancedportals.utility.WorldCoordinates;
 
 public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerReceptor
 {
     ChunkCoordinates mainBlock;
+
+    /*** The tile at {@link #mainBlock}, once it's been looked up ***/
+    TileStabilizerMain cachedMain;
     int rows;
     boolean is3x3 = false;
     private final PowerHandler mjHandler;
@@ -59,21 +61,21 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
         {
             if (GeneralUtils.isWrench(player.inventory.getCurrentItem()))
             {
-                WorldCoordinates topLeft = getWorldCoordinates();
+                ChunkCoordinates topLeft = getChunkCoordinates();
 
-                while (topLeft.offset(ForgeDirection.WEST).getBlock() == BlockStabilizer.instance) // Get the westernmost block
+                while (isLoadedStabilizer(topLeft.posX - 1, topLeft.posY, topLeft.posZ)) // Get the westernmost block
                 {
-                    topLeft = topLeft.offset(ForgeDirection.WEST);
+                    topLeft.posX--;
                 }
 
-                while (topLeft.offset(ForgeDirection.NORTH).getBlock() == BlockStabilizer.instance) // Get the northenmost block
+                while (isLoadedStabilizer(topLeft.posX, topLeft.posY, topLeft.posZ - 1)) // Get the northenmost block
                 {
-                    topLeft = topLeft.offset(ForgeDirection.NORTH);
+                    topLeft.posZ--;
                 }
 
-                while (topLeft.offset(ForgeDirection.UP).getBlock() == BlockStabilizer.instance) // Get the highest block
+                while (isLoadedStabilizer(topLeft.posX, topLeft.posY + 1, topLeft.posZ)) // Get the highest block
                 {
-                    topLeft = topLeft.offset(ForgeDirection.UP);
+                    topLeft.posY++;
                 }
 
                 ArrayList<ChunkCoordinates> blocks = checkShapeThreeWide(topLeft); // 3x3
@@ -118,13 +120,14 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
                         {
                             TileStabilizer t = (TileStabilizer) tile;
                             t.mainBlock = topLeft;
+                            t.cachedMain = null;
                             worldObj.markBlockForUpdate(t.xCoord, t.yCoord, t.zCoord);
                         }
                     }
 
                     worldObj.setBlock(topLeft.posX, topLeft.posY, topLeft.posZ, BlockStabilizer.instance, 1, 3);
 
-                    TileEntity tile = topLeft.getTileEntity();
+                    TileEntity tile = worldObj.getTileEntity(topLeft.posX, topLeft.posY, topLeft.posZ);
 
                     if (tile instanceof TileStabilizerMain)
                     {
@@ -156,7 +159,7 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
         return true;
     }
 
-    ArrayList<ChunkCoordinates> checkShapeThreeWide(WorldCoordinates topLeft)
+    ArrayList<ChunkCoordinates> checkShapeThreeWide(ChunkCoordinates topLeft)
     {
         ArrayList<ChunkCoordinates> blocks = new ArrayList<ChunkCoordinates>();
         ChunkCoordinates heightChecker = new ChunkCoordinates(topLeft);
@@ -194,7 +197,7 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
         return blocks;
     }
 
-    ArrayList<ChunkCoordinates> checkShapeTwoWide(WorldCoordinates topLeft, boolean isX)
+    ArrayList<ChunkCoordinates> checkShapeTwoWide(ChunkCoordinates topLeft, boolean isX)
     {
         ArrayList<ChunkCoordinates> blocks = new ArrayList<ChunkCoordinates>();
         ChunkCoordinates heightChecker = new ChunkCoordinates(topLeft);
@@ -275,21 +278,28 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
     }
 
     /***
-     * Gets the block that does all the processing for this multiblock. If that block is self, will return self.
+     * Gets the block that does all the processing for this multiblock. If that block is self, will return self. Only looked up in the world the first time, or after the main block has unloaded; the main block isn't loaded by this.
      */
     public TileStabilizerMain getMainBlock()
     {
-        if (mainBlock != null)
+        if (cachedMain != null && !cachedMain.isInvalid() && !cachedMain.unloaded)
+        {
+            return cachedMain;
+        }
+
+        cachedMain = null;
+
+        if (mainBlock != null && worldObj.blockExists(mainBlock.posX, mainBlock.posY, mainBlock.posZ))
         {
             TileEntity tile = worldObj.getTileEntity(mainBlock.posX, mainBlock.posY, mainBlock.posZ);
 
-            if (tile != null && tile instanceof TileStabilizerMain)
+            if (tile instanceof TileStabilizerMain)
             {
-                return (TileStabilizerMain) tile;
+                cachedMain = (TileStabilizerMain) tile;
             }
         }
 
-        return null;
+        return cachedMain;
     }
 
     @Override
@@ -317,6 +327,11 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
         return worldObj;
     }
 
+    boolean isLoadedStabilizer(int x, int y, int z)
+    {
+        return worldObj.blockExists(x, y, z) && worldObj.getBlock(x, y, z) == BlockStabilizer.instance;
+    }
+
     @Override
     public void onDataPacket(net.minecraft.network.NetworkManager net, S35PacketUpdateTileEntity pkt)
     {
@@ -325,11 +340,36 @@ public class TileStabilizer extends TileEP implements IEnergyHandler, IPowerRece
         worldObj.markBlockForUpdate(xCoord, yCoord, zCoord);
     }
 
+    /***
+     * Re-checks the neighbours of this block that lie inside the multiblock, and takes the multiblock apart if one of them is no longer a stabilizer. The rest of the structure was checked when it formed and each block checks its own neighbours, so nothing else needs scanning.
+     */
+    public void onNeighborBlockChange()
+    {
+        TileStabilizerMain main = getMainBlock();
+
+        if (main == null)
+        {
+            return;
+        }
+
+        for (ForgeDirection d : ForgeDirection.VALID_DIRECTIONS)
+        {
+            int x = xCoord + d.offsetX, y = yCoord + d.offsetY, z = zCoord + d.offsetZ;
+
+            if (main.isWithinBounds(x, y, z) && worldObj.blockExists(x, y, z) && worldObj.getBlock(x, y, z) != BlockStabilizer.instance)
+            {
+                main.deconstruct();
+                return;
+            }
+        }
+    }
+
     @Override
     public void readFromNBT(NBTTagCompound tag)
     {
         super.readFromNBT(tag);
         mainBlock = GeneralUtils.loadChunkCoord(tag, "mainBlock");
+        cachedMain = null;
     }
 
     @Override
@@ -3,8 +3,7 @@ package enhancedportals.tileentity;
 import io.netty.buffer.ByteBuf;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.Arrays;
 import java.util.Random;
 
 import net.minecraft.block.Block;
@@ -15,7 +14,6 @@ import net.minecraft.inventory.IInventory;
 import net.minecraft.item.ItemBlock;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagList;
 import net.minecraft.potion.Potion;
 import net.minecraft.potion.PotionEffect;
 import net.minecraft.tileentity.TileEntity;
@@ -36,9 +34,13 @@ import enhancedportals.block.BlockStabilizer;
 import enhancedportals.item.ItemLocationCard;
 import enhancedportals.network.CommonProxy;
 import enhancedportals.network.GuiHandler;
+import enhancedportals.portal.ConnectionTable;
+import enhancedportals.portal.ConnectionTable.Connection;
+import enhancedportals.portal.GlyphAddress;
 import enhancedportals.portal.GlyphIdentifier;
 import enhancedportals.portal.PortalException;
 import enhancedportals.portal.PortalTextureManager;
+import enhancedportals.portal.StabilizerScheduler;
 import enhancedportals.utility.GeneralUtils;
 
 public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHandler, IPowerReceptor
@@ -47,11 +49,17 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
 
     ArrayList<ChunkCoordinates> blockList;
 
-    HashMap<String, String> activeConnections;
-    HashMap<String, String> activeConnectionsReverse;
+    ConnectionTable activeConnections;
 
     ItemStack inventory;
-    int rows, tickTimer;
+    int rows;
+    long billingTime;
+
+    /*** Corners of the multiblock, which is always a solid box ***/
+    int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /*** Set when the chunk unloads, so the other blocks of the multiblock stop using this tile ***/
+    boolean unloaded;
     EnergyStorage energyStorage;
     public int powerState, instability = 0;
     Random rand = new Random();
@@ -64,8 +72,7 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
     public TileStabilizerMain()
     {
         blockList = new ArrayList<ChunkCoordinates>();
-        activeConnections = new HashMap<String, String>();
-        activeConnectionsReverse = new HashMap<String, String>();
+        activeConnections = new ConnectionTable();
         energyStorage = new EnergyStorage(0);
 
         float energyUsage = CommonProxy.REDSTONE_FLUX_COST / CommonProxy.RF_PER_MJ;
@@ -154,20 +161,30 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         }
     }
 
-    public void breakBlock(Block b, int oldMetadata)
+    /***
+     * Takes the power for the active connections, then schedules the next bill. Called by the {@link StabilizerScheduler}.
+     */
+    public void bill()
     {
-        for (int i = activeConnections.size() - 1; i > -1; i--) // Go backwards so we don't get messed up by connections getting removed from this list
+        billingTime = 0;
+
+        if (activeConnections.isEmpty() || !GeneralUtils.hasEnergyCost())
         {
-            try
-            {
-                terminateExistingConnection(new GlyphIdentifier(activeConnections.values().toArray(new String[activeConnections.size()])[i]));
-            }
-            catch (Exception e)
-            {
+            return;
+        }
 
-            }
+        if (!payForConnections())
+        {
+            shedConnections();
         }
 
+        scheduleBilling();
+    }
+
+    public void breakBlock(Block b, int oldMetadata)
+    {
+        terminateAllConnections();
+
         for (ChunkCoordinates c : blockList)
         {
             TileEntity tile = worldObj.getTileEntity(c.posX, c.posY, c.posZ);
@@ -176,6 +193,7 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
             {
                 TileStabilizer t = (TileStabilizer) tile;
                 t.mainBlock = null;
+                t.cachedMain = null;
                 worldObj.markBlockForUpdate(t.xCoord, t.yCoord, t.zCoord);
             }
         }
@@ -195,10 +213,36 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         return true;
     }
 
-    @Override
-    public boolean canUpdate()
+    /***
+     * Charges from the energy container in the slot, or sets the location of a blank location card. Called by the {@link StabilizerScheduler} each tick after the slot or stored energy changes.
+     *
+     * @return True if there's more charging to do next tick
+     */
+    public boolean chargeFromInventory()
     {
-        return true;
+        if (inventory == null)
+        {
+            return false;
+        }
+        else if (inventory.getItem() instanceof IEnergyContainerItem)
+        {
+            IEnergyContainerItem item = (IEnergyContainerItem) inventory.getItem();
+            int requiredEnergy = energyStorage.getMaxEnergyStored() - energyStorage.getEnergyStored();
+
+            if (requiredEnergy <= 0 || item.getEnergyStored(inventory) <= 0)
+            {
+                return false;
+            }
+
+            energyStorage.receiveEnergy(item.extractEnergy(inventory, Math.min(requiredEnergy, 10000), false), false);
+            return true;
+        }
+        else if (inventory.getItem() == ItemLocationCard.instance && !ItemLocationCard.hasDBSLocation(inventory))
+        {
+            ItemLocationCard.setDBSLocation(inventory, getWorldCoordinates());
+        }
+
+        return false;
     }
 
     @Override
@@ -207,6 +251,28 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
 
     }
 
+    /***
+     * Closes the portals at both ends of a connection that has already been taken out of the table.
+     */
+    void closePortals(Connection connection)
+    {
+        TileController cA = EnhancedPortals.proxy.networkManager.getPortalController(connection.dialler), cB = EnhancedPortals.proxy.networkManager.getPortalController(connection.receiver);
+
+        if (cA != null)
+        {
+            cA.portalRemove();
+            cA.cacheDestination(null, null);
+            cA.revertTextureData();
+        }
+
+        if (cB != null)
+        {
+            cB.portalRemove();
+            cB.cacheDestination(null, null);
+            cB.revertTextureData();
+        }
+    }
+
     public void deconstruct()
     {
         breakBlock(null, 0);
@@ -248,26 +314,30 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
     @Override
     public int extractEnergy(ForgeDirection from, int maxExtract, boolean simulate)
     {
-        return energyStorage.extractEnergy(maxExtract, simulate);
+        int extracted = energyStorage.extractEnergy(maxExtract, simulate);
+
+        if (!simulate && extracted > 0)
+        {
+            wake();
+        }
+
+        return extracted;
     }
 
     public int getActiveConnections()
     {
-        return activeConnections != null ? activeConnections.size() : -1;
+        return activeConnections.size();
     }
 
-    public GlyphIdentifier getConnectedPortal(GlyphIdentifier uniqueIdentifier)
+    public long getBillingTime()
     {
-        if (activeConnections.containsKey(uniqueIdentifier.getGlyphString()))
-        {
-            return new GlyphIdentifier(activeConnections.get(uniqueIdentifier.getGlyphString()));
-        }
-        else if (activeConnectionsReverse.containsKey(uniqueIdentifier.getGlyphString()))
-        {
-            return new GlyphIdentifier(activeConnectionsReverse.get(uniqueIdentifier.getGlyphString()));
-        }
+        return billingTime;
+    }
 
-        return null;
+    public GlyphIdentifier getConnectedPortal(GlyphIdentifier uniqueIdentifier)
+    {
+        long other = activeConnections.getOther(uniqueIdentifier.toAddress());
+        return other == GlyphAddress.NONE ? null : GlyphAddress.toIdentifier(other);
     }
 
     public EnergyStorage getEnergyStorage()
@@ -354,6 +424,19 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         return extractEnergy(null, (int) (powerRequirement * 0.3), true) == (int) (powerRequirement * 0.3);
     }
 
+    @Override
+    public void invalidate()
+    {
+        super.invalidate();
+
+        if (worldObj != null && !worldObj.isRemote)
+        {
+            StabilizerScheduler.remove(this);
+        }
+
+        billingTime = 0;
+    }
+
     @Override
     public boolean isItemValidForSlot(int i, ItemStack itemstack)
     {
@@ -366,6 +449,25 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         return true;
     }
 
+    public boolean isWithinBounds(int x, int y, int z)
+    {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    @Override
+    public void onChunkUnload()
+    {
+        super.onChunkUnload();
+        unloaded = true;
+
+        if (!worldObj.isRemote)
+        {
+            StabilizerScheduler.remove(this);
+        }
+
+        billingTime = 0;
+    }
+
     @Override
     public void openInventory()
     {
@@ -397,6 +499,43 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         energyStorage.setEnergyStored(buffer.readInt());
     }
 
+    /***
+     * Takes the power for the active connections at the best level the power state allows, and sets the instability to match.
+     *
+     * @return False if there isn't enough power for even the lowest level, in which case nothing is taken
+     */
+    boolean payForConnections()
+    {
+        int powerRequirement = (int) (GeneralUtils.getPowerMultiplier() * activeConnections.size() * CommonProxy.REDSTONE_FLUX_COST);
+
+        if (powerState == 0 && extractEnergy(null, powerRequirement, true) == powerRequirement) // Simulate the full power requirement
+        {
+            extractEnergy(null, powerRequirement, false);
+            setInstability(0);
+            return true;
+        }
+        else if ((powerState == 1 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.8), true) == (int) (powerRequirement * 0.8)) // Otherwise, try it at 80%
+        {
+            extractEnergy(null, (int) (powerRequirement * 0.8), false);
+            setInstability(20);
+            return true;
+        }
+        else if ((powerState == 2 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.5), true) == (int) (powerRequirement * 0.5)) // Otherwise, try it at 50%
+        {
+            extractEnergy(null, (int) (powerRequirement * 0.5), false);
+            setInstability(50);
+            return true;
+        }
+        else if ((powerState == 3 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.3), true) == (int) (powerRequirement * 0.3)) // Otherwise, try it at 30%
+        {
+            extractEnergy(null, (int) (powerRequirement * 0.3), false);
+            setInstability(70);
+            return true;
+        }
+
+        return false;
+    }
+
     @Override
     public void readFromNBT(NBTTagCompound tag)
     {
@@ -406,20 +545,12 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         rows = tag.getInteger("rows");
         energyStorage = new EnergyStorage(rows * getEnergyStoragePerRow());
         blockList = GeneralUtils.loadChunkCoordList(tag, "blockList");
+        updateBounds();
         energyStorage.readFromNBT(tag);
 
         if (tag.hasKey("activeConnections"))
         {
-            NBTTagList c = tag.getTagList("activeConnections", 10);
-
-            for (int i = 0; i < c.tagCount(); i++)
-            {
-                NBTTagCompound t = c.getCompoundTagAt(i);
-                String A = t.getString("Key"), B = t.getString("Value");
-
-                activeConnections.put(A, B);
-                activeConnectionsReverse.put(B, A);
-            }
+            activeConnections.readFromNBT(tag, "activeConnections");
         }
 
         if (tag.hasKey("inventory"))
@@ -439,24 +570,35 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
      */
     public void removeExistingConnection(GlyphIdentifier portalA, GlyphIdentifier portalB)
     {
-        activeConnections.remove(portalA.getGlyphString());
-        activeConnections.remove(portalB.getGlyphString());
-        activeConnectionsReverse.remove(portalA.getGlyphString());
-        activeConnectionsReverse.remove(portalB.getGlyphString());
+        activeConnections.remove(portalA.toAddress());
+        activeConnections.remove(portalB.toAddress());
 
-        if (activeConnections.size() == 0 && powerState == 0 && instability > 0)
+        if (activeConnections.isEmpty() && powerState == 0 && instability > 0)
         {
             setInstability(0);
         }
     }
 
+    /***
+     * Asks the {@link StabilizerScheduler} to bill the active connections in a second, unless a bill is already due.
+     */
+    void scheduleBilling()
+    {
+        if (billingTime == 0 && !activeConnections.isEmpty() && GeneralUtils.hasEnergyCost() && worldObj != null && !worldObj.isRemote)
+        {
+            billingTime = StabilizerScheduler.scheduleBilling(this, CommonProxy.REDSTONE_FLUX_TIMER);
+        }
+    }
+
     public void setData(ArrayList<ChunkCoordinates> blocks, int rows2, boolean is3)
     {
         is3x3 = is3;
         rows = rows2;
         blockList = blocks;
+        updateBounds();
         energyStorage = new EnergyStorage(rows * getEnergyStoragePerRow());
         worldObj.markBlockForUpdate(xCoord, yCoord, zCoord);
+        wake();
     }
 
     void setInstability(int newInstability)
@@ -468,10 +610,10 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
 
         instability = newInstability;
 
-        for (Entry<String, String> pair : activeConnections.entrySet())
+        for (Connection connection : activeConnections.snapshot())
         {
-            TileController controllerA = EnhancedPortals.proxy.networkManager.getPortalController(new GlyphIdentifier(pair.getKey()));
-            TileController controllerB = EnhancedPortals.proxy.networkManager.getPortalController(new GlyphIdentifier(pair.getValue()));
+            TileController controllerA = EnhancedPortals.proxy.networkManager.getLoadedPortalController(GlyphAddress.toIdentifier(connection.dialler));
+            TileController controllerB = EnhancedPortals.proxy.networkManager.getLoadedPortalController(GlyphAddress.toIdentifier(connection.receiver));
 
             if (controllerA != null)
             {
@@ -489,6 +631,7 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
     public void setInventorySlotContents(int i, ItemStack itemstack)
     {
         inventory = itemstack;
+        wake();
     }
 
     /***
@@ -498,11 +641,11 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
      */
     public boolean setupNewConnection(GlyphIdentifier portalA, GlyphIdentifier portalB, PortalTextureManager textureManager) throws PortalException
     {
-        if (activeConnections.containsKey(portalA.getGlyphString()))
+        if (activeConnections.isDialler(portalA.toAddress()))
         {
             throw new PortalException("diallingPortalAlreadyActive");
         }
-        else if (activeConnections.containsValue(portalB.getGlyphString()))
+        else if (activeConnections.isReceiver(portalB.toAddress()))
         {
             throw new PortalException("receivingPortalAlreadyActive");
         }
@@ -614,33 +757,68 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
             throw new PortalException("receivingPortalFailedToCreatePortal");
         }
 
-        activeConnections.put(portalA.getGlyphString(), portalB.getGlyphString());
-        activeConnectionsReverse.put(portalB.getGlyphString(), portalA.getGlyphString());
+        activeConnections.add(portalA.toAddress(), portalB.toAddress(), cA.getConnectionPriority());
+        scheduleBilling();
         return true;
     }
 
     /***
-     * Terminates both portals and removes them from the active connection list. Used by dialling devices when the exit location is not known by the controller.
+     * Drops connections, lowest priority and most recent first, until the stabilizer can pay for the ones left. A brownout only closes as many portals as it has to, so there's less to redial when the power comes back.
      */
-    public void terminateExistingConnection(GlyphIdentifier identifier) throws PortalException
+    void shedConnections()
     {
-        if (identifier == null || identifier.isEmpty())
+        Connection[] connections = activeConnections.snapshot();
+        Arrays.sort(connections, ConnectionTable.SHEDDING_ORDER);
+
+        for (Connection connection : connections)
         {
-            throw new PortalException("No identifier found for first portal");
+            if (activeConnections.remove(connection.dialler) != null)
+            {
+                closePortals(connection);
+            }
+
+            if (activeConnections.isEmpty())
+            {
+                setInstability(0);
+                return;
+            }
+            else if (payForConnections())
+            {
+                return;
+            }
         }
+    }
 
-        GlyphIdentifier portalA = new GlyphIdentifier(identifier), portalB = null;
+    /***
+     * Closes every connection in one pass over a snapshot of the table, for when the stabilizer is broken. Portals whose controller can't be found are dropped from the table all the same.
+     */
+    void terminateAllConnections()
+    {
+        Connection[] connections = activeConnections.snapshot();
+        activeConnections.clear();
 
-        if (activeConnections.containsKey(identifier.getGlyphString()))
+        for (Connection connection : connections)
         {
-            portalB = new GlyphIdentifier(activeConnections.get(identifier.getGlyphString()));
+            closePortals(connection);
         }
-        else if (activeConnectionsReverse.containsKey(identifier.getGlyphString()))
+
+        if (powerState == 0 && instability > 0)
         {
-            portalB = new GlyphIdentifier(activeConnectionsReverse.get(identifier.getGlyphString()));
+            setInstability(0);
         }
+    }
 
-        terminateExistingConnection(portalA, portalB);
+    /***
+     * Terminates both portals and removes them from the active connection list. Used by dialling devices when the exit location is not known by the controller.
+     */
+    public void terminateExistingConnection(GlyphIdentifier identifier) throws PortalException
+    {
+        if (identifier == null || identifier.isEmpty())
+        {
+            throw new PortalException("No identifier found for first portal");
+        }
+
+        terminateExistingConnection(new GlyphIdentifier(identifier), getConnectedPortal(identifier));
     }
 
     /***
@@ -686,7 +864,7 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
 
             removeExistingConnection(portalA, portalB);
         }
-        else if (activeConnections.containsKey(portalA.getGlyphString()) && activeConnections.get(portalA.getGlyphString()).equals(portalB.getGlyphString()) || activeConnectionsReverse.containsKey(portalA.getGlyphString()) && activeConnectionsReverse.get(portalA.getGlyphString()).equals(portalB.getGlyphString()))
+        else if (activeConnections.getOther(portalA.toAddress()) == portalB.toAddress())
         {
             // Make sure we're terminating the correct connection, also don't mind that we're terminating it from the other side that we started it from
             cA.portalRemove();
@@ -704,74 +882,39 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
         }
     }
 
-    @Override
-    public void updateEntity()
+    void updateBounds()
     {
-        if (activeConnections.size() > 0 && GeneralUtils.hasEnergyCost() && tickTimer >= CommonProxy.REDSTONE_FLUX_TIMER)
-        {
-            int powerRequirement = (int) (GeneralUtils.getPowerMultiplier() * activeConnections.size() * CommonProxy.REDSTONE_FLUX_COST);
-
-            if (powerState == 0 && extractEnergy(null, powerRequirement, true) == powerRequirement) // Simulate the full power requirement
-            {
-                extractEnergy(null, powerRequirement, false);
-                setInstability(0);
-            }
-            else if ((powerState == 1 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.8), true) == (int) (powerRequirement * 0.8)) // Otherwise, try it at 80%
-            {
-                extractEnergy(null, (int) (powerRequirement * 0.8), false);
-                setInstability(20);
-            }
-            else if ((powerState == 2 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.5), true) == (int) (powerRequirement * 0.5)) // Otherwise, try it at 50%
-            {
-                extractEnergy(null, (int) (powerRequirement * 0.5), false);
-                setInstability(50);
-            }
-            else if ((powerState == 3 || powerState == 0) && extractEnergy(null, (int) (powerRequirement * 0.3), true) == (int) (powerRequirement * 0.3)) // Otherwise, try it at 30%
-            {
-                extractEnergy(null, (int) (powerRequirement * 0.3), false);
-                setInstability(70);
-            }
-            else
-            {
-                for (int i = activeConnections.size() - 1; i > -1; i--) // Go backwards so we don't get messed up by connections getting removed from this list
-                {
-                    try
-                    {
-                        terminateExistingConnection(new GlyphIdentifier(activeConnections.values().toArray(new String[activeConnections.size()])[i]));
-                    }
-                    catch (PortalException e)
-                    {
-                        EnhancedPortals.logger.warn(e.getMessage());
-                    }
-                }
-
-                setInstability(0);
-            }
+        minX = minY = minZ = Integer.MAX_VALUE;
+        maxX = maxY = maxZ = Integer.MIN_VALUE;
 
-            tickTimer = -1;
+        for (ChunkCoordinates c : blockList)
+        {
+            minX = Math.min(minX, c.posX);
+            minY = Math.min(minY, c.posY);
+            minZ = Math.min(minZ, c.posZ);
+            maxX = Math.max(maxX, c.posX);
+            maxY = Math.max(maxY, c.posY);
+            maxZ = Math.max(maxZ, c.posZ);
         }
+    }
 
-        if (inventory != null)
-        {
-            if (inventory.getItem() instanceof IEnergyContainerItem)
-            {
-                int requiredEnergy = energyStorage.getMaxEnergyStored() - energyStorage.getEnergyStored();
+    @Override
+    public void validate()
+    {
+        super.validate();
+        scheduleBilling();
+        wake();
+    }
 
-                if (requiredEnergy > 0 && ((IEnergyContainerItem) inventory.getItem()).getEnergyStored(inventory) > 0)
-                {
-                    energyStorage.receiveEnergy(((IEnergyContainerItem) inventory.getItem()).extractEnergy(inventory, Math.min(requiredEnergy, 10000), false), false);
-                }
-            }
-            else if (inventory.getItem() == ItemLocationCard.instance)
-            {
-                if (!ItemLocationCard.hasDBSLocation(inventory) && !worldObj.isRemote)
-                {
-                    ItemLocationCard.setDBSLocation(inventory, getWorldCoordinates());
-                }
-            }
+    /***
+     * Lets the {@link StabilizerScheduler} charge from the slot again.
+     */
+    void wake()
+    {
+        if (inventory != null && worldObj != null && !worldObj.isRemote)
+        {
+            StabilizerScheduler.charge(this);
         }
-
-        tickTimer++;
     }
 
     @Override
@@ -786,17 +929,7 @@ public class TileStabilizerMain extends TileEP implements IInventory, IEnergyHan
 
         if (!activeConnections.isEmpty())
         {
-            NBTTagList c = new NBTTagList();
-
-            for (Entry<String, String> entry : activeConnections.entrySet())
-            {
-                NBTTagCompound t = new NBTTagCompound();
-                t.setString("Key", entry.getKey());
-                t.setString("Value", entry.getValue());
-                c.appendTag(t);
-            }
-
-            tag.setTag("activeConnections", c);
+            activeConnections.writeToNBT(tag, "activeConnections");
         }
 
         if (inventory != null)
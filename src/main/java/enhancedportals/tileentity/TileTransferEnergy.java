@@ -35,8 +35,6 @@ public class TileTransferEnergy extends TileFrameTransfer implements IEnergyHand
     public final EnergyStorage storage = new EnergyStorage(16000);
     public final PowerHandler mjHandler;
 
-    int tickTimer = 20, time = 0;
-
     IEnergyHandler[] handlers = new IEnergyHandler[6];
 
     boolean cached = false;
@@ -265,70 +263,28 @@ public class TileTransferEnergy extends TileFrameTransfer implements IEnergyHand
         cached = true;
     }
 
+    /***
+     * Receiving modules pass their energy on to the blocks around them. Sending modules are emptied by the controller's {@link enhancedportals.portal.EnergyBus}.
+     */
     @Override
     public void updateEntity()
     {
         super.updateEntity();
 
-        if (!worldObj.isRemote)
+        if (!worldObj.isRemote && !isSending)
         {
-            if (isSending)
+            if (!cached)
             {
-                if (time >= tickTimer)
-                {
-                    time = 0;
-
-                    TileController controller = getPortalController();
-
-                    if (controller != null && controller.isPortalActive() && storage.getEnergyStored() > 0)
-                    {
-                        TileController exitController = (TileController) controller.getDestinationLocation().getTileEntity();
-
-                        if (exitController != null)
-                        {
-                            for (ChunkCoordinates c : exitController.getTransferEnergy())
-                            {
-                                TileEntity tile = exitController.getWorldObj().getTileEntity(c.posX, c.posY, c.posZ);
-
-                                if (tile != null && tile instanceof TileTransferEnergy)
-                                {
-                                    TileTransferEnergy energy = (TileTransferEnergy) tile;
-
-                                    if (!energy.isSending)
-                                    {
-                                        if (energy.receiveEnergy(null, storage.getEnergyStored(), true) > 0)
-                                        {
-                                            storage.extractEnergy(energy.receiveEnergy(null, storage.getEnergyStored(), false), false);
-                                        }
-                                    }
-                                }
-
-                                if (storage.getEnergyStored() == 0)
-                                {
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                time++;
+                updateEnergyHandlers();
             }
-            else
-            {
-                if (!cached)
-                {
-                    updateEnergyHandlers();
-                }
-
-                for (int i = outputTracker; i < 6 && storage.getEnergyStored() > 0; i++)
-                {
-                    transferEnergy(i);
-                }
 
-                outputTracker++;
-                outputTracker = (byte) (outputTracker % 6);
+            for (int i = outputTracker; i < 6 && storage.getEnergyStored() > 0; i++)
+            {
+                transferEnergy(i);
             }
+
+            outputTracker++;
+            outputTracker = (byte) (outputTracker % 6);
         }
     }
 
@@ -290,24 +290,19 @@ public class TileTransferFluid extends TileFrameTransfer implements IFluidHandle
 
                     if (controller != null && controller.isPortalActive() && tank.getFluidAmount() > 0)
                     {
-                        TileController exitController = (TileController) controller.getDestinationLocation().getTileEntity();
+                        TileEntity exit = controller.getDestinationLocation().getLoadedTileEntity();
 
-                        if (exitController != null)
+                        if (exit instanceof TileController)
                         {
-                            for (ChunkCoordinates c : exitController.getTransferFluids())
-                            {
-                                TileEntity tile = exitController.getWorldObj().getTileEntity(c.posX, c.posY, c.posZ);
+                            TileController exitController = (TileController) exit;
 
-                                if (tile != null && tile instanceof TileTransferFluid)
+                            for (TileTransferFluid fluid : exitController.getTransferFluidTiles())
+                            {
+                                if (!fluid.isSending)
                                 {
-                                    TileTransferFluid fluid = (TileTransferFluid) tile;
-
-                                    if (!fluid.isSending)
+                                    if (fluid.fill(null, tank.getFluid(), false) > 0)
                                     {
-                                        if (fluid.fill(null, tank.getFluid(), false) > 0)
-                                        {
-                                            tank.drain(fluid.fill(null, tank.getFluid(), true), true);
-                                        }
+                                        tank.drain(fluid.fill(null, tank.getFluid(), true), true);
                                     }
                                 }
 
@@ -14,7 +14,6 @@ import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.tileentity.TileEntity;
-import net.minecraft.util.ChunkCoordinates;
 import cpw.mods.fml.common.Optional.Interface;
 import cpw.mods.fml.common.Optional.InterfaceList;
 import cpw.mods.fml.common.Optional.Method;
@@ -286,59 +285,54 @@ public class TileTransferItem extends TileFrameTransfer implements IInventory, I
 
                     if (controller != null && controller.isPortalActive() && stack != null)
                     {
-                        TileController exitController = (TileController) controller.getDestinationLocation().getTileEntity();
+                        TileEntity exit = controller.getDestinationLocation().getLoadedTileEntity();
 
-                        if (exitController != null)
+                        if (exit instanceof TileController)
                         {
-                            for (ChunkCoordinates c : exitController.getTransferItems())
-                            {
-                                TileEntity tile = exitController.getWorldObj().getTileEntity(c.posX, c.posY, c.posZ);
+                            TileController exitController = (TileController) exit;
 
-                                if (tile != null && tile instanceof TileTransferItem)
+                            for (TileTransferItem item : exitController.getTransferItemTiles())
+                            {
+                                if (!item.isSending)
                                 {
-                                    TileTransferItem item = (TileTransferItem) tile;
-
-                                    if (!item.isSending)
+                                    if (item.getStackInSlot(0) == null)
+                                    {
+                                        item.setInventorySlotContents(0, stack);
+                                        item.markDirty();
+                                        stack = null;
+                                        markDirty();
+                                    }
+                                    else if (item.getStackInSlot(0).getItem() == stack.getItem())
                                     {
-                                        if (item.getStackInSlot(0) == null)
+                                        int amount = 0;
+
+                                        if (item.getStackInSlot(0).stackSize + stack.stackSize <= stack.getMaxStackSize())
+                                        {
+                                            amount = stack.stackSize;
+                                        }
+                                        else
+                                        {
+                                            amount = stack.stackSize - (item.getStackInSlot(0).stackSize + stack.stackSize - 64);
+                                        }
+
+                                        if (amount <= 0)
+                                        {
+                                            continue;
+                                        }
+
+                                        item.getStackInSlot(0).stackSize += amount;
+                                        item.markDirty();
+
+                                        if (amount == stack.stackSize)
                                         {
-                                            item.setInventorySlotContents(0, stack);
-                                            item.markDirty();
                                             stack = null;
-                                            markDirty();
                                         }
-                                        else if (item.getStackInSlot(0).getItem() == stack.getItem())
+                                        else
                                         {
-                                            int amount = 0;
-
-                                            if (item.getStackInSlot(0).stackSize + stack.stackSize <= stack.getMaxStackSize())
-                                            {
-                                                amount = stack.stackSize;
-                                            }
-                                            else
-                                            {
-                                                amount = stack.stackSize - (item.getStackInSlot(0).stackSize + stack.stackSize - 64);
-                                            }
-
-                                            if (amount <= 0)
-                                            {
-                                                continue;
-                                            }
-
-                                            item.getStackInSlot(0).stackSize += amount;
-                                            item.markDirty();
-
-                                            if (amount == stack.stackSize)
-                                            {
-                                                stack = null;
-                                            }
-                                            else
-                                            {
-                                                stack.stackSize -= amount;
-                                            }
-
-                                            markDirty();
+                                            stack.stackSize -= amount;
                                         }
+
+                                        markDirty();
                                     }
                                 }
 
@@ -0,0 +1,218 @@
+package enhancedportals.utility;
+
+import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
+import net.minecraft.world.EnumSkyBlock;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.common.util.ForgeDirection;
+
+/***
+ * Writes many blocks straight into chunk storage, then does the lighting, client updates and neighbour notifications in one pass with {@link #finish}. Changing thousands of portal blocks through World.setBlock would relight, resend and notify around every single one.
+ */
+public class BulkBlockWriter
+{
+    World world;
+
+    /*** Every block that's been changed since the last {@link #finish}, and what it was before ***/
+    LongMap<Block> changed;
+
+    /*** Changed blocks that haven't been sent to clients yet ***/
+    LongSet unsent;
+
+    public BulkBlockWriter(World world)
+    {
+        this.world = world;
+        changed = new LongMap<Block>();
+        unsent = new LongSet();
+    }
+
+    /***
+     * Relights the changed blocks and sends any that haven't been sent to clients. Players watching a chunk get its changes together, as a single chunk update once there are enough of them.
+     *
+     * @param notifyNeighbours
+     *            Whether to tell the blocks surrounding the changed area that their neighbours changed, as World.setBlock does with flag 1
+     */
+    public void finish(boolean notifyNeighbours)
+    {
+        long[] blocks = changed.keys();
+        relight(blocks);
+        flush();
+
+        if (notifyNeighbours)
+        {
+            for (long c : blocks)
+            {
+                int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
+                Block old = changed.get(c);
+
+                for (ForgeDirection d : ForgeDirection.VALID_DIRECTIONS)
+                {
+                    if (!changed.containsKey(PackedCoordinates.pack(x + d.offsetX, y + d.offsetY, z + d.offsetZ))) // Blocks inside the area don't need telling
+                    {
+                        world.notifyBlockOfNeighborChange(x + d.offsetX, y + d.offsetY, z + d.offsetZ, old);
+                    }
+                }
+            }
+        }
+
+        changed.clear();
+    }
+
+    /***
+     * Sends the blocks changed since the last flush to clients, leaving the lighting until {@link #finish}. For work spread over several ticks that should only be lit once it's done.
+     */
+    public void flush()
+    {
+        for (long c : unsent.toArray())
+        {
+            world.markBlockForUpdate(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c));
+        }
+
+        unsent.clear();
+    }
+
+    int getLightOpacity(long c)
+    {
+        int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
+        return Math.max(world.getBlock(x, y, z).getLightOpacity(world, x, y, z), 1);
+    }
+
+    int getLightValue(long c)
+    {
+        int x = PackedCoordinates.getX(c), y = PackedCoordinates.getY(c), z = PackedCoordinates.getZ(c);
+        return world.getBlock(x, y, z).getLightValue(world, x, y, z);
+    }
+
+    int getSavedLightValue(long c)
+    {
+        return world.getSavedLightValue(EnumSkyBlock.Block, PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c));
+    }
+
+    boolean isLoaded(long c)
+    {
+        return world.blockExists(PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c));
+    }
+
+    /***
+     * Updates block light around all the changed blocks at once. The light they used to give off or let through is removed first, as far as it reached, then light is spread back in from the changed blocks and from everything at the edge of the darkened area that's lit by something else. Each affected block is visited a bounded number of times however many blocks changed, where World.updateLightByType would darken and relight the area around every one of them.
+     */
+    void relight(long[] blocks)
+    {
+        LongQueue darken = new LongQueue(blocks.length), darkenLevels = new LongQueue(blocks.length), brighten = new LongQueue(blocks.length);
+
+        for (long c : blocks)
+        {
+            int level = getSavedLightValue(c);
+
+            if (level > 0)
+            {
+                setLightValue(c, 0);
+                darken.add(c);
+                darkenLevels.add(level);
+            }
+        }
+
+        while (!darken.isEmpty())
+        {
+            long c = darken.remove();
+            int level = (int) darkenLevels.remove();
+
+            for (ForgeDirection d : ForgeDirection.VALID_DIRECTIONS)
+            {
+                long neighbour = PackedCoordinates.offset(c, d.offsetX, d.offsetY, d.offsetZ);
+
+                if (!isLoaded(neighbour))
+                {
+                    continue;
+                }
+
+                int neighbourLevel = getSavedLightValue(neighbour);
+
+                if (neighbourLevel > 0 && neighbourLevel < level) // Lit from here
+                {
+                    setLightValue(neighbour, 0);
+                    darken.add(neighbour);
+                    darkenLevels.add(neighbourLevel);
+
+                    if (getLightValue(neighbour) > 0)
+                    {
+                        brighten.add(neighbour);
+                    }
+                }
+                else if (neighbourLevel >= level) // Lit by something else, which needs spreading back in
+                {
+                    brighten.add(neighbour);
+                }
+            }
+        }
+
+        for (long c : blocks)
+        {
+            brighten.add(c);
+        }
+
+        while (!brighten.isEmpty())
+        {
+            long c = brighten.remove();
+            int level = Math.max(getSavedLightValue(c), getLightValue(c));
+
+            if (level > getSavedLightValue(c))
+            {
+                setLightValue(c, level);
+            }
+
+            for (ForgeDirection d : ForgeDirection.VALID_DIRECTIONS)
+            {
+                long neighbour = PackedCoordinates.offset(c, d.offsetX, d.offsetY, d.offsetZ);
+
+                if (isLoaded(neighbour))
+                {
+                    int neighbourLevel = level - getLightOpacity(neighbour);
+
+                    if (neighbourLevel > getSavedLightValue(neighbour))
+                    {
+                        setLightValue(neighbour, neighbourLevel);
+                        brighten.add(neighbour);
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean setBlock(int x, int y, int z, Block block, int meta)
+    {
+        if (y < 0 || y >= world.getHeight())
+        {
+            return false;
+        }
+
+        Chunk chunk = world.getChunkFromChunkCoords(x >> 4, z >> 4);
+        Block old = chunk.getBlock(x & 15, y, z & 15);
+
+        if (!chunk.func_150807_a(x & 15, y, z & 15, block, meta))
+        {
+            return false;
+        }
+
+        long c = PackedCoordinates.pack(x, y, z);
+
+        if (!changed.containsKey(c)) // Neighbours are told about what was there before the first change
+        {
+            changed.put(c, old);
+        }
+
+        unsent.add(c);
+        return true;
+    }
+
+    public boolean setBlockToAir(int x, int y, int z)
+    {
+        return setBlock(x, y, z, Blocks.air, 0);
+    }
+
+    void setLightValue(long c, int level)
+    {
+        world.setLightValue(EnumSkyBlock.Block, PackedCoordinates.getX(c), PackedCoordinates.getY(c), PackedCoordinates.getZ(c), level);
+    }
+}
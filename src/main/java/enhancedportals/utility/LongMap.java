@@ -0,0 +1,231 @@
+package enhancedportals.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/***
+ * Open addressing hash map with primitive long keys. Avoids boxing the packed addresses and coordinates used as keys throughout the portal registry.
+ */
+public class LongMap<V>
+{
+    static final int DEFAULT_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.6f;
+
+    long[] keys;
+    Object[] values;
+    boolean[] used;
+    int size, mask, resizeAt;
+
+    public LongMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongMap(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+
+        while (capacity * LOAD_FACTOR < expectedSize)
+        {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    /***
+     * Creates a copy of the specified map. Values are shared, not copied.
+     */
+    public LongMap(LongMap<V> map)
+    {
+        keys = map.keys.clone();
+        values = map.values.clone();
+        used = map.used.clone();
+        size = map.size;
+        mask = map.mask;
+        resizeAt = map.resizeAt;
+    }
+
+    static int hash(long key)
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public boolean containsKey(long key)
+    {
+        return indexOf(key) != -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int i = indexOf(key);
+        return i == -1 ? null : (V) values[i];
+    }
+
+    int indexOf(long key)
+    {
+        for (int i = hash(key) & mask; used[i]; i = i + 1 & mask)
+        {
+            if (keys[i] == key)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /***
+     * @return A snapshot of all keys currently in the map.
+     */
+    public long[] keys()
+    {
+        long[] result = new long[size];
+
+        for (int i = 0, j = 0; i < keys.length; i++)
+        {
+            if (used[i])
+            {
+                result[j++] = keys[i];
+            }
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        int i = hash(key) & mask;
+
+        for (; used[i]; i = i + 1 & mask)
+        {
+            if (keys[i] == key)
+            {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size > resizeAt)
+        {
+            rehash(keys.length << 1);
+        }
+
+        return null;
+    }
+
+    void rehash(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                int j = hash(oldKeys[i]) & mask;
+
+                while (used[j])
+                {
+                    j = j + 1 & mask;
+                }
+
+                used[j] = true;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /***
+     * Removes the key, shifting any following entries of the same probe run back so lookups never need tombstones.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int i = indexOf(key);
+
+        if (i == -1)
+        {
+            return null;
+        }
+
+        V old = (V) values[i];
+        size--;
+
+        for (int j = i + 1 & mask; used[j]; j = j + 1 & mask)
+        {
+            int home = hash(keys[j]) & mask;
+
+            if (i <= j ? i < home && home <= j : i < home || home <= j)
+            {
+                continue;
+            }
+
+            keys[i] = keys[j];
+            values[i] = values[j];
+            i = j;
+        }
+
+        used[i] = false;
+        values[i] = null;
+        return old;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /***
+     * @return A snapshot of all values currently in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<V> values()
+    {
+        ArrayList<V> result = new ArrayList<V>(size);
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (used[i])
+            {
+                result.add((V) values[i]);
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package enhancedportals.utility;
+
+import java.util.Arrays;
+
+/***
+ * First in, first out queue of primitive longs, backed by a circular array that grows as needed.
+ */
+public class LongQueue
+{
+    long[] elements;
+    int head, size;
+
+    public LongQueue()
+    {
+        this(16);
+    }
+
+    public LongQueue(int expectedSize)
+    {
+        elements = new long[Integer.highestOneBit(Math.max(expectedSize, 2) - 1) << 1];
+    }
+
+    public void add(long value)
+    {
+        if (size == elements.length)
+        {
+            long[] grown = Arrays.copyOfRange(elements, head, head + elements.length * 2);
+            System.arraycopy(elements, 0, grown, elements.length - head, head);
+            elements = grown;
+            head = 0;
+        }
+
+        elements[head + size & elements.length - 1] = value;
+        size++;
+    }
+
+    public void clear()
+    {
+        head = size = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long remove()
+    {
+        if (size == 0)
+        {
+            throw new IllegalStateException("Queue is empty");
+        }
+
+        long value = elements[head];
+        head = head + 1 & elements.length - 1;
+        size--;
+        return value;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,137 @@
+package enhancedportals.utility;
+
+import java.util.Arrays;
+
+/***
+ * Open addressing hash set of primitive longs. Used with {@link PackedCoordinates} to track visited blocks without allocating a ChunkCoordinates for each one.
+ */
+public class LongSet
+{
+    static final int DEFAULT_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.6f;
+
+    long[] keys;
+    boolean[] used;
+    int size, mask, resizeAt;
+
+    public LongSet()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongSet(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+
+        while (capacity * LOAD_FACTOR < expectedSize)
+        {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    /***
+     * @return True if the value wasn't already in the set
+     */
+    public boolean add(long value)
+    {
+        int i = LongMap.hash(value) & mask;
+
+        for (; used[i]; i = i + 1 & mask)
+        {
+            if (keys[i] == value)
+            {
+                return false;
+            }
+        }
+
+        used[i] = true;
+        keys[i] = value;
+
+        if (++size > resizeAt)
+        {
+            rehash(keys.length << 1);
+        }
+
+        return true;
+    }
+
+    void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public boolean contains(long value)
+    {
+        for (int i = LongMap.hash(value) & mask; used[i]; i = i + 1 & mask)
+        {
+            if (keys[i] == value)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    void rehash(int capacity)
+    {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                int j = LongMap.hash(oldKeys[i]) & mask;
+
+                while (used[j])
+                {
+                    j = j + 1 & mask;
+                }
+
+                used[j] = true;
+                keys[j] = oldKeys[i];
+            }
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /***
+     * @return A snapshot of all values currently in the set.
+     */
+    public long[] toArray()
+    {
+        long[] result = new long[size];
+
+        for (int i = 0, j = 0; i < keys.length; i++)
+        {
+            if (used[i])
+            {
+                result[j++] = keys[i];
+            }
+        }
+
+        return result;
+    }
+}
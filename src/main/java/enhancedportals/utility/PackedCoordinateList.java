@@ -0,0 +1,259 @@
+package enhancedportals.utility;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.ChunkCoordinates;
+
+/***
+ * List of block coordinates stored as {@link PackedCoordinates} in a single long array, rather than one ChunkCoordinates object each. Coordinates handed out by {@link #get} are new copies, so changing them doesn't change the list.
+ */
+public class PackedCoordinateList extends AbstractList<ChunkCoordinates>
+{
+    static final int HEADER_SIZE = 5;
+    static final long Z_SIGN = 1L << PackedCoordinates.Z_SHIFT + PackedCoordinates.Z_BITS - 1;
+
+    long[] elements;
+    int size;
+
+    public PackedCoordinateList()
+    {
+        this(8);
+    }
+
+    public PackedCoordinateList(Collection<ChunkCoordinates> c)
+    {
+        this(c.size());
+        addAll(c);
+    }
+
+    public PackedCoordinateList(int expectedSize)
+    {
+        elements = new long[Math.max(expectedSize, 1)];
+    }
+
+    @Override
+    public void add(int index, ChunkCoordinates c)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        if (size == elements.length)
+        {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = PackedCoordinates.pack(c);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public void clear()
+    {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) != -1;
+    }
+
+    @Override
+    public ChunkCoordinates get(int index)
+    {
+        return PackedCoordinates.unpack(getPacked(index));
+    }
+
+    public long getPacked(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return elements[index];
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        if (!(o instanceof ChunkCoordinates))
+        {
+            return -1;
+        }
+
+        long packed = PackedCoordinates.pack((ChunkCoordinates) o);
+
+        for (int i = 0; i < size; i++)
+        {
+            if (elements[i] == packed)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /***
+     * Reads a list written by {@link #writeToNBT}. Also reads the list of compound tags that older versions saved.
+     */
+    public void readFromNBT(NBTTagCompound tag, String name)
+    {
+        clear();
+
+        if (tag.func_150299_b(name) == 9) // Legacy list of {X, Y, Z} compounds
+        {
+            NBTTagList tagList = tag.getTagList(name, 10);
+
+            for (int i = 0; i < tagList.tagCount(); i++)
+            {
+                NBTTagCompound t = tagList.getCompoundTagAt(i);
+                add(new ChunkCoordinates(t.getInteger("X"), t.getInteger("Y"), t.getInteger("Z")));
+            }
+
+            return;
+        }
+
+        int[] data = tag.getIntArray(name);
+
+        if (data.length < HEADER_SIZE)
+        {
+            return;
+        }
+
+        int minX = data[0], minY = data[1], minZ = data[2], spanY = data[3], spanZ = data[4], end = 0;
+
+        for (int i = HEADER_SIZE; i + 1 < data.length; i += 2)
+        {
+            int start = end + data[i];
+            end = start + data[i + 1];
+
+            for (int index = start; index < end; index++)
+            {
+                add(new ChunkCoordinates(minX + index / spanZ / spanY, minY + index / spanZ % spanY, minZ + index % spanZ));
+            }
+        }
+    }
+
+    @Override
+    public ChunkCoordinates remove(int index)
+    {
+        ChunkCoordinates c = get(index);
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return c;
+    }
+
+    @Override
+    public ChunkCoordinates set(int index, ChunkCoordinates c)
+    {
+        ChunkCoordinates old = get(index);
+        elements[index] = PackedCoordinates.pack(c);
+        return old;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /***
+     * Sorts the coordinates along X, then Y, then Z. Blocks that sit next to each other in a flat structure end up next to each other in the list, which keeps {@link #writeToNBT} down to a handful of runs.
+     */
+    public void sort()
+    {
+        if (size < 2)
+        {
+            return;
+        }
+
+        for (int i = 0; i < size; i++)
+        {
+            elements[i] ^= Z_SIGN; // Z is stored in the low bits, so negative values would otherwise sort after positive ones
+        }
+
+        Arrays.sort(elements, 0, size);
+
+        for (int i = 0; i < size; i++)
+        {
+            elements[i] ^= Z_SIGN;
+        }
+
+        modCount++;
+    }
+
+    /***
+     * Writes the list as a single int array: the minimum corner and size of its bounding box, then each run of consecutive positions within that box as a gap from the end of the previous run and a length. A sorted, rectangular portal is one run. Lists whose bounding box is too large to number with an int are written in the legacy format instead.
+     */
+    public void writeToNBT(NBTTagCompound tag, String name)
+    {
+        if (size == 0)
+        {
+            tag.setIntArray(name, new int[0]);
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        for (int i = 0; i < size; i++)
+        {
+            long c = elements[i];
+            minX = Math.min(minX, PackedCoordinates.getX(c));
+            minY = Math.min(minY, PackedCoordinates.getY(c));
+            minZ = Math.min(minZ, PackedCoordinates.getZ(c));
+            maxX = Math.max(maxX, PackedCoordinates.getX(c));
+            maxY = Math.max(maxY, PackedCoordinates.getY(c));
+            maxZ = Math.max(maxZ, PackedCoordinates.getZ(c));
+        }
+
+        int spanY = maxY - minY + 1, spanZ = maxZ - minZ + 1;
+
+        if ((long) (maxX - minX + 1) * spanY * spanZ > Integer.MAX_VALUE)
+        {
+            GeneralUtils.saveChunkCoordList(tag, this, name);
+            return;
+        }
+
+        int[] data = new int[HEADER_SIZE + size * 2];
+        int length = HEADER_SIZE, end = 0;
+        data[0] = minX;
+        data[1] = minY;
+        data[2] = minZ;
+        data[3] = spanY;
+        data[4] = spanZ;
+
+        for (int i = 0; i < size;)
+        {
+            int start = index(elements[i], minX, minY, minZ, spanY, spanZ), runLength = 1;
+
+            while (i + runLength < size && index(elements[i + runLength], minX, minY, minZ, spanY, spanZ) == start + runLength)
+            {
+                runLength++;
+            }
+
+            data[length++] = start - end;
+            data[length++] = runLength;
+            end = start + runLength;
+            i += runLength;
+        }
+
+        tag.setIntArray(name, Arrays.copyOf(data, length));
+    }
+
+    static int index(long c, int minX, int minY, int minZ, int spanY, int spanZ)
+    {
+        return ((PackedCoordinates.getX(c) - minX) * spanY + PackedCoordinates.getY(c) - minY) * spanZ + PackedCoordinates.getZ(c) - minZ;
+    }
+}
@@ -0,0 +1,48 @@
+package enhancedportals.utility;
+
+import net.minecraft.util.ChunkCoordinates;
+
+/***
+ * Packs block coordinates into a single long: 26 bits of X, 12 bits of Y, 26 bits of Z. Covers the whole world border, and lets coordinates be stored and compared without allocating objects.
+ */
+public class PackedCoordinates
+{
+    static final int X_BITS = 26, Y_BITS = 12, Z_BITS = 26;
+    static final int Z_SHIFT = 0, Y_SHIFT = Z_BITS, X_SHIFT = Y_BITS + Z_BITS;
+    static final long X_MASK = (1L << X_BITS) - 1, Y_MASK = (1L << Y_BITS) - 1, Z_MASK = (1L << Z_BITS) - 1;
+
+    public static int getX(long packed)
+    {
+        return (int) (packed << 64 - X_SHIFT - X_BITS >> 64 - X_BITS);
+    }
+
+    public static int getY(long packed)
+    {
+        return (int) (packed << 64 - Y_SHIFT - Y_BITS >> 64 - Y_BITS);
+    }
+
+    public static int getZ(long packed)
+    {
+        return (int) (packed << 64 - Z_SHIFT - Z_BITS >> 64 - Z_BITS);
+    }
+
+    public static long offset(long packed, int x, int y, int z)
+    {
+        return pack(getX(packed) + x, getY(packed) + y, getZ(packed) + z);
+    }
+
+    public static long pack(ChunkCoordinates c)
+    {
+        return pack(c.posX, c.posY, c.posZ);
+    }
+
+    public static long pack(int x, int y, int z)
+    {
+        return (x & X_MASK) << X_SHIFT | (y & Y_MASK) << Y_SHIFT | (z & Z_MASK) << Z_SHIFT;
+    }
+
+    public static ChunkCoordinates unpack(long packed)
+    {
+        return new ChunkCoordinates(getX(packed), getY(packed), getZ(packed));
+    }
+}
@@ -0,0 +1,47 @@
+package enhancedportals.utility;
+
+import net.minecraft.server.MinecraftServer;
+import enhancedportals.network.CommonProxy;
+
+/***
+ * Shares {@link CommonProxy#portalBuildTime} milliseconds of work per server tick between everything that spreads a large job over several ticks.
+ */
+public class TickBudget
+{
+    static int tick = -1;
+    static long used;
+
+    /***
+     * Starts timing some work.
+     * 
+     * @return The time it started, to pass to {@link #hasTime} and {@link #end}
+     */
+    public static long begin()
+    {
+        int now = MinecraftServer.getServer().getTickCounter();
+
+        if (now != tick)
+        {
+            tick = now;
+            used = 0;
+        }
+
+        return System.nanoTime();
+    }
+
+    /***
+     * Stops timing the work started at the specified time, taking it off this tick's budget.
+     */
+    public static void end(long start)
+    {
+        used += System.nanoTime() - start;
+    }
+
+    /***
+     * @return True if the work started at the specified time can carry on this tick
+     */
+    public static boolean hasTime(long start)
+    {
+        return used + System.nanoTime() - start < CommonProxy.portalBuildTime * 1000000L;
+    }
+}
@@ -1,6 +1,7 @@
 package enhancedportals.utility;
 
 import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.ChunkCoordinates;
@@ -40,33 +41,60 @@ public class WorldCoordinates extends ChunkCoordinates
         dimension = coord.dimension;
     }
 
+    /***
+     * Loads the dimension and chunk if they aren't already. Use {@link #getLoadedBlock} if an unloaded block can be skipped.
+     */
     public Block getBlock()
     {
-        WorldServer world = getWorld();
-
-        if (!world.getChunkProvider().chunkExists(posX >> 4, posY >> 4))
-        {
-            world.getChunkProvider().loadChunk(posX >> 4, posY >> 4);
-        }
+        WorldServer world = getWorldAndChunk();
+        return world == null ? Blocks.air : world.getBlock(posX, posY, posZ);
+    }
 
-        return world.getBlock(posX, posY, posZ);
+    /***
+     * @return The block, or null if its dimension or chunk isn't loaded. Never loads anything.
+     */
+    public Block getLoadedBlock()
+    {
+        return isChunkLoaded() ? getLoadedWorld().getBlock(posX, posY, posZ) : null;
     }
 
-    public int getMetadata()
+    /***
+     * @return The tile entity, or null if there isn't one or its dimension or chunk isn't loaded. Never loads anything.
+     */
+    public TileEntity getLoadedTileEntity()
     {
-        WorldServer world = getWorld();
+        return isChunkLoaded() ? getLoadedWorld().getTileEntity(posX, posY, posZ) : null;
+    }
 
-        if (!world.getChunkProvider().chunkExists(posX >> 4, posY >> 4))
-        {
-            world.getChunkProvider().loadChunk(posX >> 4, posY >> 4);
-        }
+    /***
+     * @return The world, or null if the dimension isn't loaded. Never loads it.
+     */
+    public WorldServer getLoadedWorld()
+    {
+        return DimensionManager.getWorld(dimension);
+    }
 
-        return world.getBlockMetadata(posX, posY, posZ);
+    /***
+     * Loads the dimension and chunk if they aren't already.
+     */
+    public int getMetadata()
+    {
+        WorldServer world = getWorldAndChunk();
+        return world == null ? 0 : world.getBlockMetadata(posX, posY, posZ);
     }
 
+    /***
+     * Loads the dimension and chunk if they aren't already. Use {@link #getLoadedTileEntity} if an unloaded tile can be skipped, or {@link #loadChunk} to wait for it without stalling the server.
+     */
     public TileEntity getTileEntity()
     {
-        WorldServer world = getWorld();
+        WorldServer world = getWorldAndChunk();
+        return world == null ? null : world.getTileEntity(posX, posY, posZ);
+    }
+
+    public WorldServer getWorld()
+    {
+        WorldServer world = DimensionManager.getWorld(dimension);
 
         if (world == null)
         {
@@ -79,30 +107,41 @@ public class WorldCoordinates extends ChunkCoordinates
             }
         }
 
-        if (!world.getChunkProvider().chunkExists(posX >> 4, posY >> 4))
+        return world;
+    }
+
+    WorldServer getWorldAndChunk()
+    {
+        WorldServer world = getWorld();
+
+        if (world != null && !world.getChunkProvider().chunkExists(posX >> 4, posZ >> 4))
         {
-            world.getChunkProvider().loadChunk(posX >> 4, posY >> 4);
+            world.getChunkProvider().loadChunk(posX >> 4, posZ >> 4);
         }
 
-        return world.getTileEntity(posX, posY, posZ);
+        return world;
     }
 
-    public WorldServer getWorld()
+    public boolean isChunkLoaded()
     {
-        WorldServer world = DimensionManager.getWorld(dimension);
+        WorldServer world = getLoadedWorld();
+        return world != null && world.getChunkProvider().chunkExists(posX >> 4, posZ >> 4);
+    }
+
+    /***
+     * Loads the chunk, then runs the callback on the main thread. Chunks saved on disk are read by Forge's chunk IO thread, so the server doesn't wait on them; the callback runs straight away if the chunk is already loaded or has to be generated. The dimension is still loaded here if it isn't already, as that can only happen on the main thread.
+     */
+    public void loadChunk(Runnable callback)
+    {
+        WorldServer world = getWorld();
 
         if (world == null)
         {
-            DimensionManager.initDimension(dimension);
-            world = DimensionManager.getWorld(dimension);
-
-            if (world == null)
-            {
-                return null; // How?
-            }
+            callback.run();
+            return;
         }
 
-        return world;
+        world.theChunkProviderServer.loadChunk(posX >> 4, posZ >> 4, callback);
     }
 
     public WorldCoordinates offset(ForgeDirection orientation)
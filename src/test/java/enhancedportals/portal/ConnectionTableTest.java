@@ -0,0 +1,108 @@
+package enhancedportals.portal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.junit.Test;
+
+import enhancedportals.portal.ConnectionTable.Connection;
+
+public class ConnectionTableTest
+{
+    static final long A = GlyphAddress.fromString("1"), B = GlyphAddress.fromString("2"), C = GlyphAddress.fromString("3"), D = GlyphAddress.fromString("4"), E = GlyphAddress.fromString("5"), F = GlyphAddress.fromString("6");
+
+    static ConnectionTable table()
+    {
+        ConnectionTable table = new ConnectionTable();
+        assertTrue(table.add(A, B, 0));
+        assertTrue(table.add(C, D, 1));
+        assertTrue(table.add(E, F, 2));
+        return table;
+    }
+
+    @Test
+    public void testAddRejectsConnectedPortals()
+    {
+        ConnectionTable table = table();
+
+        assertFalse(table.add(A, GlyphAddress.fromString("7"), 0));
+        assertFalse(table.add(GlyphAddress.fromString("7"), D, 0));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void testLookupFromEitherEnd()
+    {
+        ConnectionTable table = table();
+
+        assertSame(table.get(C), table.get(D));
+        assertEquals(D, table.getOther(C));
+        assertEquals(C, table.getOther(D));
+        assertTrue(table.isDialler(C));
+        assertTrue(table.isReceiver(D));
+        assertFalse(table.isDialler(D));
+        assertEquals(GlyphAddress.NONE, table.getOther(GlyphAddress.fromString("7")));
+    }
+
+    @Test
+    public void testRemoveLastRecord()
+    {
+        ConnectionTable table = table();
+        Connection removed = table.remove(E);
+
+        assertEquals(F, removed.receiver);
+        assertEquals(2, table.size());
+        assertNull(table.connections[2]);
+        assertEquals(0, table.get(A).index);
+        assertEquals(1, table.get(C).index);
+    }
+
+    @Test
+    public void testRemoveSwapsLastRecordIntoGap()
+    {
+        ConnectionTable table = table();
+        Connection removed = table.remove(B); // By the receiving end
+
+        assertEquals(A, removed.dialler);
+        assertEquals(2, table.size());
+        assertNull(table.get(A));
+        assertNull(table.get(B));
+        assertNull(table.remove(A));
+        assertNull(table.connections[2]);
+
+        Connection moved = table.get(E);
+        assertSame(moved, table.connections[0]);
+        assertEquals(0, moved.index);
+        assertSame(table.get(C), table.connections[1]);
+        assertEquals(1, table.get(C).index);
+
+        assertSame(moved, table.remove(F)); // The moved record is still found by its new index
+        assertEquals(1, table.size());
+        assertSame(table.get(C), table.connections[0]);
+        assertEquals(0, table.get(C).index);
+    }
+
+    @Test
+    public void testSavedInEstablishedOrder()
+    {
+        ConnectionTable table = table();
+        table.remove(A); // Moves the newest connection to the front of the array
+        NBTTagCompound tag = new NBTTagCompound();
+        table.writeToNBT(tag, "Connections");
+        ConnectionTable read = new ConnectionTable();
+        read.readFromNBT(tag, "Connections");
+        Connection[] connections = read.snapshot();
+
+        assertEquals(2, connections.length);
+        assertEquals(C, connections[0].dialler);
+        assertEquals(1, connections[0].priority);
+        assertEquals(E, connections[1].dialler);
+        assertEquals(F, connections[1].receiver);
+        assertEquals(2, connections[1].priority);
+    }
+}
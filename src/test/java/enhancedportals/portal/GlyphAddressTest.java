@@ -0,0 +1,88 @@
+package enhancedportals.portal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GlyphAddressTest
+{
+    @Test
+    public void testEmptyAddress()
+    {
+        assertEquals(GlyphAddress.EMPTY, GlyphAddress.fromString(""));
+        assertEquals(GlyphAddress.EMPTY, GlyphAddress.fromGlyphs(new ArrayList<Integer>()));
+        assertEquals("", GlyphAddress.toString(GlyphAddress.EMPTY));
+        assertEquals(0, GlyphAddress.size(GlyphAddress.EMPTY));
+        assertTrue(GlyphAddress.isValid(GlyphAddress.EMPTY));
+    }
+
+    @Test
+    public void testFullAddress()
+    {
+        Integer[] glyphs = { 27, 0, 13, 26, 1, 27, 5, 9, 27 };
+        long address = GlyphAddress.fromGlyphs(Arrays.asList(glyphs));
+
+        assertTrue(GlyphAddress.isValid(address));
+        assertEquals(GlyphAddress.MAX_GLYPHS, GlyphAddress.size(address));
+
+        for (int i = 0; i < glyphs.length; i++)
+        {
+            assertEquals((int) glyphs[i], GlyphAddress.getGlyph(address, i));
+        }
+
+        assertEquals("27-0-13-26-1-27-5-9-27", GlyphAddress.toString(address));
+        assertEquals(address, GlyphAddress.fromString(GlyphAddress.toString(address)));
+    }
+
+    @Test
+    public void testIdentifierRoundTrip()
+    {
+        long address = GlyphAddress.fromString("4-0-19");
+        GlyphIdentifier identifier = GlyphAddress.toIdentifier(address);
+
+        assertEquals(Arrays.asList(4, 0, 19), identifier.getGlyphs());
+        assertEquals(address, GlyphAddress.fromIdentifier(identifier));
+        assertNull(GlyphAddress.toIdentifier(GlyphAddress.NONE));
+        assertEquals(GlyphAddress.NONE, GlyphAddress.fromIdentifier(null));
+    }
+
+    @Test
+    public void testInvalidAddresses()
+    {
+        assertFalse(GlyphAddress.isValid(GlyphAddress.NONE));
+        assertFalse(GlyphAddress.isValid(GlyphAddress.fromString("1-2") | 1L << 20)); // A glyph past the end
+        assertFalse(GlyphAddress.isValid(10)); // Too many glyphs
+        assertEquals(GlyphAddress.NONE, GlyphAddress.fromGlyphs(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)));
+        assertEquals(GlyphAddress.NONE, GlyphAddress.fromGlyphs(Arrays.asList(1, GlyphAddress.GLYPH_COUNT)));
+        assertEquals(GlyphAddress.NONE, GlyphAddress.fromGlyphs(Arrays.asList(-1)));
+        assertNull(GlyphAddress.toString(GlyphAddress.NONE));
+    }
+
+    @Test
+    public void testParsesLegacyStrings()
+    {
+        long address = GlyphAddress.fromString("1-2-3");
+
+        assertEquals(GlyphAddress.fromGlyphs(Arrays.asList(1, 2, 3)), address);
+        assertEquals(3, GlyphAddress.size(address));
+        assertEquals("1-2-3", GlyphAddress.toString(address));
+        assertEquals(GlyphAddress.fromString("0"), GlyphAddress.fromGlyphs(Arrays.asList(0)));
+    }
+
+    @Test
+    public void testRejectsMalformedStrings()
+    {
+        String[] malformed = { null, "28", "1--2", "-1", "1-", "a", "1-2-3-4-5-6-7-8-9-10", "1 2" };
+
+        for (String str : malformed)
+        {
+            assertEquals(str, GlyphAddress.NONE, GlyphAddress.fromString(str));
+        }
+    }
+}
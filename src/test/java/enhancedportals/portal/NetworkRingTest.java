@@ -0,0 +1,118 @@
+package enhancedportals.portal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NetworkRingTest
+{
+    static final long A = GlyphAddress.fromString("1"), B = GlyphAddress.fromString("2-3"), C = GlyphAddress.fromString("4-5-6"), D = GlyphAddress.fromString("27");
+
+    static NetworkRing ring(long... portals)
+    {
+        NetworkRing ring = new NetworkRing();
+
+        for (long portal : portals)
+        {
+            assertTrue(ring.add(portal));
+        }
+
+        return ring;
+    }
+
+    @Test
+    public void testAddKeepsDiallingOrder()
+    {
+        NetworkRing ring = ring(A, B, C);
+
+        assertFalse(ring.add(B));
+        assertEquals(3, ring.size());
+        assertEquals(A, ring.first());
+        assertArrayEquals(new long[] { A, B, C }, ring.toArray());
+    }
+
+    @Test
+    public void testCopyIsIndependent()
+    {
+        NetworkRing ring = ring(A, B, C);
+        NetworkRing copy = new NetworkRing(ring);
+        copy.remove(B);
+        copy.add(D);
+
+        assertArrayEquals(new long[] { A, B, C }, ring.toArray());
+        assertEquals(B, ring.next(A));
+        assertEquals(A, ring.next(C));
+        assertArrayEquals(new long[] { A, C, D }, copy.toArray());
+    }
+
+    @Test
+    public void testEmptyRing()
+    {
+        NetworkRing ring = new NetworkRing();
+
+        assertTrue(ring.isEmpty());
+        assertEquals(GlyphAddress.NONE, ring.first());
+        assertEquals(GlyphAddress.NONE, ring.next(A));
+        assertEquals(GlyphAddress.NONE, ring.previous(A));
+        assertFalse(ring.remove(A));
+        assertEquals(0, ring.toArray().length);
+    }
+
+    @Test
+    public void testNextAndPreviousWrapAround()
+    {
+        NetworkRing ring = ring(A, B, C);
+
+        assertEquals(B, ring.next(A));
+        assertEquals(C, ring.next(B));
+        assertEquals(A, ring.next(C));
+        assertEquals(C, ring.previous(A));
+        assertEquals(A, ring.previous(B));
+        assertEquals(A, ring.next(D)); // Not in the ring, so the first
+        assertEquals(C, ring.previous(D)); // Not in the ring, so the last
+    }
+
+    @Test
+    public void testRemoveFirst()
+    {
+        NetworkRing ring = ring(A, B, C);
+
+        assertTrue(ring.remove(A));
+        assertEquals(B, ring.first());
+        assertEquals(B, ring.next(C));
+        assertEquals(C, ring.previous(B));
+        assertArrayEquals(new long[] { B, C }, ring.toArray());
+    }
+
+    @Test
+    public void testRemoveLast()
+    {
+        NetworkRing ring = ring(A);
+
+        assertTrue(ring.remove(A));
+        assertTrue(ring.isEmpty());
+        assertEquals(GlyphAddress.NONE, ring.first());
+        assertTrue(ring.add(B));
+        assertEquals(B, ring.next(B));
+    }
+
+    @Test
+    public void testRemoveMiddle()
+    {
+        NetworkRing ring = ring(A, B, C);
+
+        assertTrue(ring.remove(B));
+        assertFalse(ring.remove(B));
+        assertFalse(ring.contains(B));
+        assertEquals(C, ring.next(A));
+        assertEquals(A, ring.previous(C));
+        assertEquals(A, ring.next(B));
+        assertArrayEquals(new long[] { A, C }, ring.toArray());
+
+        ring.add(B); // Back on the end
+        assertArrayEquals(new long[] { A, C, B }, ring.toArray());
+    }
+}
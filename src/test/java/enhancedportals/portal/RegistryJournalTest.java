@@ -0,0 +1,127 @@
+package enhancedportals.portal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import enhancedportals.utility.WorldCoordinates;
+
+public class RegistryJournalTest
+{
+    static final long A = GlyphAddress.fromString("1-2-3"), B = GlyphAddress.fromString("4-5"), C = GlyphAddress.fromString("6"), NETWORK = GlyphAddress.fromString("7-7");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    RegistryJournal journal;
+    NetworkManager manager;
+
+    /***
+     * Replays the journal the way {@link NetworkManager#loadAllData} does, without recording the replayed changes again.
+     */
+    void replay() throws IOException
+    {
+        manager.loading = true;
+
+        try
+        {
+            journal.replay(manager);
+        }
+        finally
+        {
+            manager.loading = false;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        manager = new NetworkManager(null, folder.getRoot());
+        journal = new RegistryJournal(new File(folder.getRoot(), "journal.dat"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        manager.writer.close();
+    }
+
+    @Test
+    public void testMissingJournal() throws IOException
+    {
+        replay();
+
+        assertEquals(0, journal.journalRecords);
+        assertFalse(journal.hasRecordsOnDisk());
+        assertTrue(manager.portalCoordinates.isEmpty());
+    }
+
+    @Test
+    public void testReplaysEveryRecordType() throws IOException
+    {
+        journal.recordAdd(A, new WorldCoordinates(-5, 70, 12, -1));
+        journal.recordAdd(B, new WorldCoordinates(8, 64, -300, 0));
+        journal.recordAdd(C, new WorldCoordinates(0, 10, 0, 1));
+        journal.recordJoin(A, NETWORK);
+        journal.recordJoin(B, NETWORK);
+        journal.recordJoin(C, NETWORK);
+        journal.recordLeave(A, NETWORK);
+        journal.recordRemove(B);
+        journal.append(journal.takePending());
+        replay();
+
+        assertEquals(8, journal.journalRecords);
+        assertEquals(new WorldCoordinates(-5, 70, 12, -1), manager.portalCoordinates.get(A));
+        assertEquals(-1, manager.portalCoordinates.get(A).dimension);
+        assertNull(manager.portalCoordinates.get(B));
+        assertFalse(manager.portalNetworks.containsKey(A));
+        assertFalse(manager.portalNetworks.containsKey(B));
+        assertArrayEquals(new long[] { C }, manager.networkedPortals.get(NETWORK).toArray());
+    }
+
+    @Test
+    public void testReplayStopsAtTruncatedRecord() throws IOException
+    {
+        journal.recordAdd(A, new WorldCoordinates(1, 2, 3, 0));
+        journal.recordJoin(A, NETWORK);
+        journal.append(journal.takePending());
+        journal.recordAdd(B, new WorldCoordinates(4, 5, 6, 0));
+        byte[] last = journal.takePending();
+        journal.append(Arrays.copyOf(last, last.length - 5)); // Cut off partway through the coordinates, as by a crash mid-write
+
+        replay();
+
+        assertEquals(2, journal.journalRecords);
+        assertTrue(journal.hasRecordsOnDisk());
+        assertEquals(new WorldCoordinates(1, 2, 3, 0), manager.portalCoordinates.get(A));
+        assertEquals(Long.valueOf(NETWORK), manager.portalNetworks.get(A));
+        assertFalse(manager.portalCoordinates.containsKey(B));
+        assertFalse(journal.hasPendingRecords());
+    }
+
+    @Test
+    public void testReplayStopsAtTruncatedType() throws IOException
+    {
+        journal.recordAdd(A, new WorldCoordinates(1, 2, 3, 0));
+        journal.recordRemove(A);
+        byte[] records = journal.takePending();
+        journal.append(Arrays.copyOf(records, records.length - 8)); // Only the type of the removal made it to disk
+
+        replay();
+
+        assertEquals(1, journal.journalRecords);
+        assertTrue(manager.portalCoordinates.containsKey(A));
+    }
+}
@@ -0,0 +1,230 @@
+package enhancedportals.portal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import enhancedportals.utility.WorldCoordinates;
+
+public class RegistrySnapshotTest
+{
+    static final long A = GlyphAddress.fromString("1-2"), B = GlyphAddress.fromString("27-0-3"), C = GlyphAddress.fromString("5"), STRAY = GlyphAddress.fromString("6-6"), NETWORK = GlyphAddress.fromString("9-9-9");
+
+    /*** Offset of the first record number in the index of {@link #snapshot()} ***/
+    static final int FIRST_MEMBER = RegistrySnapshot.HEADER_SIZE + 3 * RegistrySnapshot.RECORD_SIZE + 12;
+
+    static void assertLocation(WorldCoordinates expected, WorldCoordinates actual)
+    {
+        assertEquals(expected, actual);
+        assertEquals(expected.dimension, actual.dimension);
+    }
+
+    /***
+     * Three portals, two of them networked, and a network whose index also lists a portal that was never registered.
+     */
+    static RegistrySnapshot snapshot()
+    {
+        long[] portals = { A, B, C };
+        WorldCoordinates[] locations = { new WorldCoordinates(-100, 64, 200, 0), new WorldCoordinates(30000000, 255, -30000000, -1), new WorldCoordinates(0, 0, 0, 7) };
+        long[] portalNetworks = { NETWORK, NETWORK, GlyphAddress.NONE };
+        return new RegistrySnapshot(portals, locations, portalNetworks, new long[] { NETWORK }, new long[][] { { B, STRAY, A } });
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ArrayList<NetworkManager> managers = new ArrayList<NetworkManager>();
+
+    NetworkManager manager()
+    {
+        NetworkManager manager = new NetworkManager(null, folder.getRoot());
+        managers.add(manager);
+        return manager;
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (NetworkManager manager : managers)
+        {
+            manager.writer.close();
+        }
+    }
+
+    @Test
+    public void testAppliesToManager() throws IOException
+    {
+        NetworkManager manager = manager();
+        RegistrySnapshot.read(ByteBuffer.wrap(snapshot().toByteArray()), "test").apply(manager);
+
+        assertEquals(3, manager.portalCoordinates.size());
+        assertLocation(new WorldCoordinates(30000000, 255, -30000000, -1), manager.portalCoordinates.get(B));
+        assertEquals(Long.valueOf(NETWORK), manager.portalNetworks.get(A));
+        assertFalse(manager.portalNetworks.containsKey(C));
+        assertArrayEquals(new long[] { B, A }, manager.networkedPortals.get(NETWORK).toArray());
+
+        RegistrySnapshot copy = new RegistrySnapshot(manager);
+        NetworkManager reloaded = manager();
+        RegistrySnapshot.read(ByteBuffer.wrap(copy.toByteArray()), "test").apply(reloaded);
+
+        assertEquals(manager.portalCoordinates.size(), reloaded.portalCoordinates.size());
+        assertArrayEquals(new long[] { B, A }, reloaded.networkedPortals.get(NETWORK).toArray());
+    }
+
+    @Test
+    public void testDamagedSnapshotIsMovedAside() throws Exception
+    {
+        NetworkManager manager = manager();
+        byte[] bytes = snapshot().toByteArray();
+        FileUtils.writeByteArrayToFile(manager.registryFile, Arrays.copyOf(bytes, bytes.length - 1));
+        File corrupt = new File(folder.getRoot(), manager.registryFile.getName() + ".corrupt");
+
+        for (int i = 0; i < 2; i++) // Loading keeps failing until the damaged file is dealt with
+        {
+            try
+            {
+                manager().loadAllData();
+                fail("Loaded a damaged registry");
+            }
+            catch (IOException e)
+            {
+                assertFalse(manager.registryFile.exists());
+                assertArrayEquals(Arrays.copyOf(bytes, bytes.length - 1), FileUtils.readFileToByteArray(corrupt));
+            }
+        }
+
+        corrupt.delete();
+        NetworkManager empty = manager();
+        empty.loadAllData();
+        assertTrue(empty.portalCoordinates.isEmpty());
+    }
+
+    @Test
+    public void testIgnoresIncompleteTemporaryFile() throws Exception
+    {
+        NetworkManager manager = manager();
+        File temp = RegistryWriter.getTempFile(manager.registryFile);
+        byte[] bytes = snapshot().toByteArray();
+        FileUtils.writeByteArrayToFile(temp, Arrays.copyOf(bytes, bytes.length / 2)); // The first snapshot, cut short while being written
+        manager.loadAllData();
+
+        assertFalse(manager.registryFile.exists());
+        assertTrue(manager.portalCoordinates.isEmpty());
+    }
+
+    @Test
+    public void testMigrationRetiresLegacyFiles() throws Exception
+    {
+        NetworkManager manager = manager();
+        FileUtils.writeStringToFile(manager.portalFile, "{\"1-2\":{\"dimension\":-1,\"posX\":5,\"posY\":64,\"posZ\":-9}}");
+        FileUtils.writeStringToFile(manager.networkFile, "{\"1-2\":\"9-9-9\"}");
+        manager.loadAllData();
+        manager.writer.close(); // Waits for the snapshot
+
+        assertTrue(manager.registryFile.exists());
+        assertFalse(manager.portalFile.exists());
+        assertFalse(manager.networkFile.exists());
+        assertTrue(new File(folder.getRoot(), manager.portalFile.getName() + ".migrated").exists());
+        assertTrue(new File(folder.getRoot(), manager.networkFile.getName() + ".migrated").exists());
+
+        NetworkManager reloaded = manager();
+        reloaded.loadAllData();
+
+        assertLocation(new WorldCoordinates(5, 64, -9, -1), reloaded.portalCoordinates.get(A));
+        assertEquals(Long.valueOf(NETWORK), reloaded.portalNetworks.get(A));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsBadMagic() throws IOException
+    {
+        byte[] bytes = snapshot().toByteArray();
+        bytes[0] ^= 1;
+        RegistrySnapshot.read(ByteBuffer.wrap(bytes), "test");
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsIndexPastLastRecord() throws IOException
+    {
+        byte[] bytes = snapshot().toByteArray();
+        ByteBuffer.wrap(bytes).putInt(FIRST_MEMBER, 3);
+        RegistrySnapshot.read(ByteBuffer.wrap(bytes), "test");
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsInvalidAddress() throws IOException
+    {
+        byte[] bytes = snapshot().toByteArray();
+        ByteBuffer.wrap(bytes).putLong(RegistrySnapshot.HEADER_SIZE, GlyphAddress.NONE);
+        RegistrySnapshot.read(ByteBuffer.wrap(bytes), "test");
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTrailingBytes() throws IOException
+    {
+        byte[] bytes = snapshot().toByteArray();
+        RegistrySnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 4)), "test");
+    }
+
+    @Test
+    public void testRejectsTruncatedData()
+    {
+        byte[] bytes = snapshot().toByteArray();
+
+        for (int length = 0; length < bytes.length; length++)
+        {
+            try
+            {
+                RegistrySnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, length)), "test");
+                throw new AssertionError("Read a snapshot cut short at " + length + " bytes");
+            }
+            catch (IOException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testRestoresUnpublishedSnapshot() throws Exception
+    {
+        NetworkManager manager = manager();
+        File temp = RegistryWriter.getTempFile(manager.registryFile);
+        FileUtils.writeByteArrayToFile(temp, snapshot().toByteArray()); // Synced, but the old snapshot was deleted and this never renamed
+        manager.loadAllData();
+
+        assertTrue(manager.registryFile.exists());
+        assertFalse(temp.exists());
+        assertEquals(3, manager.portalCoordinates.size());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        RegistrySnapshot expected = snapshot(), read = RegistrySnapshot.read(ByteBuffer.wrap(expected.toByteArray()), "test");
+
+        assertArrayEquals(expected.portals, read.portals);
+        assertArrayEquals(expected.portalNetworks, read.portalNetworks);
+        assertArrayEquals(expected.networks, read.networks);
+        assertEquals(1, read.networkMembers.length);
+        assertArrayEquals(new long[] { B, A }, read.networkMembers[0]); // The unregistered portal is dropped
+
+        for (int i = 0; i < expected.locations.length; i++)
+        {
+            assertLocation(expected.locations[i], read.locations[i]);
+        }
+    }
+}
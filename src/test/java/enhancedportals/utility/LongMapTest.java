@@ -0,0 +1,144 @@
+package enhancedportals.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongMapTest
+{
+    /***
+     * Finds keys whose probe run starts at the specified slot.
+     */
+    static long[] keysAt(LongMap<?> map, int slot, int count)
+    {
+        long[] keys = new long[count];
+        int found = 0;
+
+        for (long key = 0; found < count; key++)
+        {
+            if ((LongMap.hash(key) & map.mask) == slot)
+            {
+                keys[found++] = key;
+            }
+        }
+
+        return keys;
+    }
+
+    @Test
+    public void testCopyIsIndependent()
+    {
+        LongMap<String> map = new LongMap<String>();
+        map.put(1, "a");
+        LongMap<String> copy = new LongMap<String>(map);
+        copy.put(2, "b");
+        copy.remove(1);
+
+        assertEquals("a", map.get(1));
+        assertFalse(map.containsKey(2));
+        assertEquals(1, map.size());
+        assertEquals("b", copy.get(2));
+        assertEquals(1, copy.size());
+    }
+
+    @Test
+    public void testMatchesHashMap()
+    {
+        LongMap<Long> map = new LongMap<Long>();
+        HashMap<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++)
+        {
+            long key = random.nextInt(512) - 256;
+
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else
+            {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+
+        for (Entry<Long, Long> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testRemoveFromMiddleOfRun()
+    {
+        LongMap<String> map = new LongMap<String>(64);
+        int mask = map.mask;
+        long[] colliding = keysAt(map, 5, 3), displaced = keysAt(map, 6, 1);
+
+        map.put(colliding[0], "a"); // Slot 5
+        map.put(colliding[1], "b"); // Slot 6
+        map.put(displaced[0], "c"); // Slot 7, pushed past its home slot of 6
+        map.put(colliding[2], "d"); // Slot 8
+        assertEquals(mask, map.mask);
+
+        assertEquals("b", map.remove(colliding[1]));
+
+        assertEquals(3, map.size());
+        assertNull(map.get(colliding[1]));
+        assertEquals("a", map.get(colliding[0]));
+        assertEquals("c", map.get(displaced[0]));
+        assertEquals("d", map.get(colliding[2]));
+        assertEquals(6, map.indexOf(displaced[0]));
+        assertEquals(7, map.indexOf(colliding[2]));
+        assertFalse(map.used[8]);
+    }
+
+    @Test
+    public void testRemoveLeavesEntriesAtHome()
+    {
+        LongMap<String> map = new LongMap<String>(64);
+        long[] first = keysAt(map, 5, 2), second = keysAt(map, 7, 1);
+
+        map.put(first[0], "a"); // Slot 5
+        map.put(first[1], "b"); // Slot 6
+        map.put(second[0], "c"); // Slot 7, its home
+
+        map.remove(first[0]);
+
+        assertEquals(5, map.indexOf(first[1]));
+        assertEquals(7, map.indexOf(second[0]));
+        assertFalse(map.used[6]);
+    }
+
+    @Test
+    public void testRemoveWrapsAround()
+    {
+        LongMap<String> map = new LongMap<String>(64);
+        int last = map.mask;
+        long[] end = keysAt(map, last, 3), start = keysAt(map, 0, 1);
+
+        map.put(end[0], "a"); // Last slot
+        map.put(end[1], "b"); // Slot 0
+        map.put(start[0], "c"); // Slot 1
+        map.put(end[2], "d"); // Slot 2
+
+        assertEquals("a", map.remove(end[0]));
+
+        assertEquals(last, map.indexOf(end[1]));
+        assertEquals(0, map.indexOf(start[0]));
+        assertEquals(1, map.indexOf(end[2]));
+        assertFalse(map.used[2]);
+        assertTrue(map.containsKey(start[0]));
+        assertNull(map.remove(end[0]));
+        assertEquals(3, map.size());
+    }
+}
@@ -0,0 +1,141 @@
+package enhancedportals.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.ChunkCoordinates;
+
+import org.junit.Test;
+
+public class PackedCoordinateListTest
+{
+    static PackedCoordinateList readBack(PackedCoordinateList list)
+    {
+        NBTTagCompound tag = new NBTTagCompound();
+        list.writeToNBT(tag, "Blocks");
+        PackedCoordinateList read = new PackedCoordinateList();
+        read.readFromNBT(tag, "Blocks");
+        return read;
+    }
+
+    @Test
+    public void testEmptyList()
+    {
+        NBTTagCompound tag = new NBTTagCompound();
+        new PackedCoordinateList().writeToNBT(tag, "Blocks");
+        PackedCoordinateList read = new PackedCoordinateList();
+        read.add(new ChunkCoordinates(1, 2, 3));
+        read.readFromNBT(tag, "Blocks");
+
+        assertEquals(0, tag.getIntArray("Blocks").length);
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void testHugeBoundsFallBackToLegacyList()
+    {
+        PackedCoordinateList list = new PackedCoordinateList();
+        list.add(new ChunkCoordinates(-30000000, 0, -30000000));
+        list.add(new ChunkCoordinates(30000000, 255, 30000000));
+        NBTTagCompound tag = new NBTTagCompound();
+        list.writeToNBT(tag, "Blocks");
+        PackedCoordinateList read = new PackedCoordinateList();
+        read.readFromNBT(tag, "Blocks");
+
+        assertEquals(9, tag.func_150299_b("Blocks"));
+        assertEquals(list, read);
+    }
+
+    @Test
+    public void testReadsLegacyList()
+    {
+        NBTTagList tagList = new NBTTagList();
+        int[][] coordinates = { { -5, 64, -7 }, { 3, 0, -1 }, { -1000, 255, 1000 } };
+
+        for (int[] c : coordinates)
+        {
+            NBTTagCompound t = new NBTTagCompound();
+            t.setInteger("X", c[0]);
+            t.setInteger("Y", c[1]);
+            t.setInteger("Z", c[2]);
+            tagList.appendTag(t);
+        }
+
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setTag("Blocks", tagList);
+        PackedCoordinateList read = new PackedCoordinateList();
+        read.readFromNBT(tag, "Blocks");
+
+        assertEquals(coordinates.length, read.size());
+
+        for (int i = 0; i < coordinates.length; i++)
+        {
+            assertEquals(new ChunkCoordinates(coordinates[i][0], coordinates[i][1], coordinates[i][2]), read.get(i));
+        }
+    }
+
+    @Test
+    public void testSeparateAreasAreSeparateRuns()
+    {
+        PackedCoordinateList list = new PackedCoordinateList();
+        list.add(new ChunkCoordinates(-20, 70, -3));
+        list.add(new ChunkCoordinates(-20, 70, -2));
+        list.add(new ChunkCoordinates(-18, 72, 4));
+        NBTTagCompound tag = new NBTTagCompound();
+        list.writeToNBT(tag, "Blocks");
+        int[] data = tag.getIntArray("Blocks");
+
+        assertEquals(PackedCoordinateList.HEADER_SIZE + 4, data.length);
+        assertEquals(2, data[PackedCoordinateList.HEADER_SIZE + 1]);
+        assertEquals(1, data[PackedCoordinateList.HEADER_SIZE + 3]);
+        assertEquals(list, readBack(list));
+    }
+
+    @Test
+    public void testSortedPortalIsOneRun()
+    {
+        ArrayList<ChunkCoordinates> portal = new ArrayList<ChunkCoordinates>();
+
+        for (int z = 1; z >= -2; z--) // Added out of order, across the Z axis
+        {
+            for (int y = 66; y >= 64; y--)
+            {
+                portal.add(new ChunkCoordinates(-10, y, z));
+            }
+        }
+
+        PackedCoordinateList list = new PackedCoordinateList(portal);
+        list.sort();
+        NBTTagCompound tag = new NBTTagCompound();
+        list.writeToNBT(tag, "Blocks");
+        int[] data = tag.getIntArray("Blocks");
+
+        assertEquals(new ChunkCoordinates(-10, 64, -2), list.get(0));
+        assertEquals(new ChunkCoordinates(-10, 66, 1), list.get(list.size() - 1));
+        assertEquals(PackedCoordinateList.HEADER_SIZE + 2, data.length);
+        assertEquals(-10, data[0]);
+        assertEquals(64, data[1]);
+        assertEquals(-2, data[2]);
+        assertEquals(0, data[PackedCoordinateList.HEADER_SIZE]);
+        assertEquals(portal.size(), data[PackedCoordinateList.HEADER_SIZE + 1]);
+        assertEquals(list, readBack(list));
+    }
+
+    @Test
+    public void testSortOrdersNegativeZFirst()
+    {
+        PackedCoordinateList list = new PackedCoordinateList();
+        list.add(new ChunkCoordinates(0, 10, 5));
+        list.add(new ChunkCoordinates(0, 10, -5));
+        list.add(new ChunkCoordinates(-1, 10, 0));
+        list.sort();
+
+        assertEquals(new ChunkCoordinates(-1, 10, 0), list.get(0));
+        assertEquals(new ChunkCoordinates(0, 10, -5), list.get(1));
+        assertEquals(new ChunkCoordinates(0, 10, 5), list.get(2));
+    }
+}